@@ -0,0 +1,145 @@
+package QRCode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+//Encodes many QR Codes at once. Symbols that end up with the same version and error correction level share
+//the same block structure and Reed-Solomon divisor, so they are grouped first, and the ECC of each group is
+//computed for a tile of symbols at a time: the division state is stored struct-of-arrays (one row per ECC
+//codeword, one column per symbol), so every step is a branch-free pass over a row with a single multiplication
+//table that stays in cache. The QR Code objects are built afterwards from the precomputed ECC.
+//Provides static functions only; not instantiable.
+public final class QrBatchEncoder {
+	
+	//Returns QR Codes for the specified texts, in the same order, as if by QrCode.encodeText() on each.
+	public static List<QrCode> encodeText(List<? extends CharSequence> texts, QrCode.Ecc ecl) {
+		Objects.requireNonNull(texts);
+		List<List<QrSegment>> batch = new ArrayList<>(texts.size());
+		for (CharSequence text : texts)
+			batch.add(QrSegment.makeSegments(text));
+		return encodeSegments(batch, ecl);
+	}
+	
+	
+	//Returns QR Codes for the specified segment lists, in the same order, as if by QrCode.encodeSegments() on each.
+	public static List<QrCode> encodeSegments(List<List<QrSegment>> batch, QrCode.Ecc ecl) {
+		return encodeSegments(batch, ecl, QrCode.MIN_VERSION, QrCode.MAX_VERSION, -1, true);
+	}
+	
+	
+	//Returns QR Codes for the specified segment lists with the specified encoding parameters, in the same order,
+	//as if by QrCode.encodeSegments() on each. Throws DataTooLongException if any item does not fit.
+	public static List<QrCode> encodeSegments(List<List<QrSegment>> batch, QrCode.Ecc ecl, int minVersion, int maxVersion, int mask, boolean boostEcl) {
+		Objects.requireNonNull(batch);
+		Objects.requireNonNull(ecl);
+		if (!(QrCode.MIN_VERSION <= minVersion && minVersion <= maxVersion && maxVersion <= QrCode.MAX_VERSION) || mask < -1 || mask > 7)
+			throw new IllegalArgumentException("Invalid value");
+		
+		//Choose each item's version and error correction level, and group the items by both
+		Pending[] items = new Pending[batch.size()];
+		Map<Integer,List<Pending>> groups = new HashMap<>();
+		for (int i = 0; i < items.length; i++) {
+			List<QrSegment> segs = Objects.requireNonNull(batch.get(i));
+			int version = QrCode.findMinVersion(segs, ecl, minVersion, maxVersion);
+			QrCode.Ecc itemEcl = boostEcl ? QrCode.boostEcl(segs, version, ecl) : ecl;
+			items[i] = new Pending(version, itemEcl, QrCode.packDataCodewords(segs, version, itemEcl));
+			groups.computeIfAbsent(version * 4 + itemEcl.ordinal(), k -> new ArrayList<>()).add(items[i]);
+		}
+		
+		for (List<Pending> group : groups.values())
+			computeEcc(group);
+		
+		List<QrCode> result = new ArrayList<>(items.length);
+		for (Pending p : items)
+			result.add(new QrCode(p.version, p.ecl, p.data, mask, p.ecc, p.data.length));
+		return result;
+	}
+	
+	
+	//Fills in the ECC of every block of the given items, which all have the same version and error correction level.
+	private static void computeEcc(List<Pending> group) {
+		int ver = group.get(0).version;
+		QrCode.Ecc ecl = group.get(0).ecl;
+		int numBlocks = QrCode.getNumBlocks(ver, ecl);
+		int blockEccLen = QrCode.getEccCodewordsPerBlock(ver, ecl);
+		int rawCodewords = QrCode.getNumRawDataModules(ver) / 8;
+		int numShortBlocks = numBlocks - rawCodewords % numBlocks;
+		int shortDataLen = rawCodewords / numBlocks - blockEccLen;
+		int numData = QrCode.getNumDataCodewords(ver, ecl);
+		
+		//mulTable[e][x] is divisor coefficient e times x
+		byte[] rsDiv = QrCode.getReedSolomonDivisor(blockEccLen);
+		byte[][] mulTable = new byte[blockEccLen][256];
+		for (int e = 0; e < blockEccLen; e++) {
+			for (int x = 0; x < 256; x++)
+				mulTable[e][x] = (byte)QrCode.reedSolomonMultiply(rsDiv[e] & 0xFF, x);
+		}
+		
+		for (Pending p : group)
+			p.ecc = new byte[numBlocks][blockEccLen];
+		for (int start = 0; start < group.size(); start += TILE_SIZE) {
+			int n = Math.min(TILE_SIZE, group.size() - start);
+			
+			//Transpose the tile's data codewords so that codeword i of symbol s is at i * n + s
+			byte[] data = new byte[numData * n];
+			for (int s = 0; s < n; s++) {
+				byte[] d = group.get(start + s).data;
+				for (int i = 0; i < numData; i++)
+					data[i * n + s] = d[i];
+			}
+			
+			//Run the polynomial division of QrCode.reedSolomonUpdateRemainder() for all n symbols in lockstep.
+			//state[e * n + s] is the remainder's coefficient e for symbol s.
+			byte[] state = new byte[blockEccLen * n];
+			int[] factor = new int[n];
+			for (int b = 0, k = 0; b < numBlocks; b++) {
+				int datLen = shortDataLen + (b < numShortBlocks ? 0 : 1);
+				Arrays.fill(state, (byte)0);
+				for (int i = k; i < k + datLen; i++) {
+					for (int s = 0, off = i * n; s < n; s++)
+						factor[s] = (data[off + s] ^ state[s]) & 0xFF;
+					for (int e = 0; e < blockEccLen - 1; e++) {
+						byte[] mul = mulTable[e];
+						for (int s = 0, off = e * n; s < n; s++)
+							state[off + s] = (byte)(state[off + n + s] ^ mul[factor[s]]);
+					}
+					byte[] mul = mulTable[blockEccLen - 1];
+					for (int s = 0, off = (blockEccLen - 1) * n; s < n; s++)
+						state[off + s] = mul[factor[s]];
+				}
+				for (int s = 0; s < n; s++) {
+					byte[] ecc = group.get(start + s).ecc[b];
+					for (int e = 0; e < blockEccLen; e++)
+						ecc[e] = state[e * n + s];
+				}
+				k += datLen;
+			}
+		}
+	}
+	
+	
+	//Number of symbols whose ECC is computed together; keeps the division state within a few kilobytes.
+	private static final int TILE_SIZE = 128;
+	
+	
+	//A symbol whose data codewords are known and whose ECC (one array per block) is filled in by computeEcc().
+	private static final class Pending {
+		final int version;
+		final QrCode.Ecc ecl;
+		final byte[] data;
+		byte[][] ecc;
+		
+		Pending(int version, QrCode.Ecc ecl, byte[] data) {
+			this.version = version;
+			this.ecl = ecl;
+			this.data = data;
+		}
+	}
+	
+	
+	private QrBatchEncoder() {}  // Not instantiable
+	
+}
@@ -0,0 +1,1203 @@
+package QRCode;
+import java.math.BigInteger;
+import java.lang.ref.SoftReference;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+//This QrCode.java provides static factory functions to create a QR code from text or binary data.
+//The class supports all versions from 1 to 40, all 4 ECLs and 4 charater encoding modes.
+//Instances of this class represent an immutable square grid of dark and light cells (QR code).
+public final class QrCode {
+	
+	//Returns a QR Code representing the specified Unicode text string at the specified error correction level. Upperbound is 738.
+	public static QrCode encodeText(CharSequence text, Ecc ecl) {
+		Objects.requireNonNull(text);
+		Objects.requireNonNull(ecl);
+		List<QrSegment> segs = QrSegment.makeSegments(text);
+		return encodeSegments(segs, ecl);
+	}
+	
+	//Returns a QR Code representing the specified binary data at the specified error correction level. Upperbound is 2953 bytes.
+	public static QrCode encodeBinary(byte[] data, Ecc ecl) {
+		Objects.requireNonNull(data);
+		Objects.requireNonNull(ecl);
+		QrSegment seg = QrSegment.makeBytes(data);
+		return encodeSegments(Arrays.asList(seg), ecl);
+	}
+	
+	//Returns a QR Code representing the specified non-negative number in numeric mode, zero-padded
+	//on the left to at least minDigits digits (0 for none). Upperbound is 19 digits for a long.
+	public static QrCode encodeNumber(long value, int minDigits, Ecc ecl) {
+		Objects.requireNonNull(ecl);
+		return encodeSegments(Arrays.asList(QrSegment.makeNumeric(value, minDigits)), ecl);
+	}
+	
+	//Returns a QR Code representing the specified non-negative number in numeric mode, zero-padded
+	//on the left to at least minDigits digits (0 for none). Upperbound is 7089 digits.
+	public static QrCode encodeNumber(BigInteger value, int minDigits, Ecc ecl) {
+		Objects.requireNonNull(ecl);
+		return encodeSegments(Arrays.asList(QrSegment.makeNumeric(value, minDigits)), ecl);
+	}
+	
+	//Returns a QR Code representing the specified digit values (0 to 9 each) in numeric mode. Upperbound is 7089 digits.
+	public static QrCode encodeNumber(byte[] digits, Ecc ecl) {
+		Objects.requireNonNull(ecl);
+		return encodeSegments(Arrays.asList(QrSegment.makeNumeric(digits)), ecl);
+	}
+	
+	//Returns a QR Code representing the specified segments at the specified error correction level.
+	public static QrCode encodeSegments(List<QrSegment> segs, Ecc ecl) {
+		return encodeSegments(segs, ecl, MIN_VERSION, MAX_VERSION, -1, true);
+	}
+	
+	//Returns a QR Code representing the specified segments with the specified encoding parameters.
+	public static QrCode encodeSegments(List<QrSegment> segs, Ecc ecl, int minVersion, int maxVersion, int mask, boolean boostEcl) {
+		return encodeSegments(segs, ecl, minVersion, maxVersion, mask, boostEcl, MaskObjective.PENALTY, 0);
+	}
+	
+	//Returns a QR Code representing the specified segments with the specified encoding parameters. If the mask is -1,
+	//it is chosen by the objective among the masks whose penalty score is at most (1 + penaltyTolerance) times the
+	//lowest one (e.g. 0.1 for within 10%); with a tolerance of 0 or MaskObjective.PENALTY this is the usual choice.
+	public static QrCode encodeSegments(List<QrSegment> segs, Ecc ecl, int minVersion, int maxVersion, int mask, boolean boostEcl,
+			MaskObjective objective, double penaltyTolerance) {
+		Objects.requireNonNull(segs);
+		Objects.requireNonNull(ecl);
+		Objects.requireNonNull(objective);
+		if (!(MIN_VERSION <= minVersion && minVersion <= maxVersion && maxVersion <= MAX_VERSION) || mask < -1 || mask > 7)
+			throw new IllegalArgumentException("Invalid value");
+		if (!(penaltyTolerance >= 0))
+			throw new IllegalArgumentException("Invalid penalty tolerance");
+		
+		//Find the minimal version number to use, then increase the error correction level if the data still fits
+		int version = findMinVersion(segs, ecl, minVersion, maxVersion);
+		if (boostEcl)
+			ecl = boostEcl(segs, version, ecl);
+		
+		byte[] dataCodewords = packDataCodewords(segs, version, ecl);
+		
+		//Create the QR Code object, with the word-per-row engine for small versions unless the objective needs the modules
+		if (version <= QrSmallEncoder.MAX_VERSION && (mask != -1 || objective == MaskObjective.PENALTY || penaltyTolerance == 0))
+			return QrSmallEncoder.encode(version, ecl, dataCodewords, mask);
+		return new QrCode(version, ecl, dataCodewords, mask, null, 0, objective, penaltyTolerance, false);
+	}
+	
+	//Returns a QR Code like encodeSegments(segs, ecl, minVersion, maxVersion, mask, boostEcl), except that if the mask is -1
+	//and the chosen version is at least parallelMinVersion, the penalty scores of the eight masks are computed concurrently
+	//on the common fork-join pool, each on its own packed copy of the symbol. This lowers the latency of a single large
+	//symbol when cores are idle, at the cost of some extra work and allocation, so it is not worth it for small versions
+	//or under a full load; versions up to 10 always take the word-per-row encoder of encodeSegments(), which beats
+	//any parallel choice at those sizes. The result is identical to that of the serial choice.
+	public static QrCode encodeSegmentsParallel(List<QrSegment> segs, Ecc ecl, int minVersion, int maxVersion, int mask, boolean boostEcl,
+			int parallelMinVersion) {
+		Objects.requireNonNull(segs);
+		Objects.requireNonNull(ecl);
+		if (!(MIN_VERSION <= minVersion && minVersion <= maxVersion && maxVersion <= MAX_VERSION) || mask < -1 || mask > 7)
+			throw new IllegalArgumentException("Invalid value");
+		
+		int version = findMinVersion(segs, ecl, minVersion, maxVersion);
+		if (boostEcl)
+			ecl = boostEcl(segs, version, ecl);
+		byte[] dataCodewords = packDataCodewords(segs, version, ecl);
+		if (version <= QrSmallEncoder.MAX_VERSION)
+			return QrSmallEncoder.encode(version, ecl, dataCodewords, mask);
+		return new QrCode(version, ecl, dataCodewords, mask, null, 0, MaskObjective.PENALTY, 0, version >= parallelMinVersion);
+	}
+	
+	
+	//Returns the smallest version number in the given range whose data capacity at the given
+	//error correction level fits the given segments, or throws DataTooLongException.
+	static int findMinVersion(List<QrSegment> segs, Ecc ecl, int minVersion, int maxVersion) {
+		//Find the minimal version number to use
+		int version, dataUsedBits;
+		for (version = minVersion; ; version++) {
+			int dataCapacityBits = getNumDataCodewords(version, ecl) * 8;  //Number of data bits available
+			dataUsedBits = QrSegment.getTotalBits(segs, version);
+			if (dataUsedBits != -1 && dataUsedBits <= dataCapacityBits)
+				break;  //This version number is found to be suitable
+			if (version >= maxVersion) {  //All versions in the range could not fit the given data
+				String msg = "Segment too long";
+				if (dataUsedBits != -1)
+					msg = String.format("Data length = %d bits, Max capacity = %d bits", dataUsedBits, dataCapacityBits);
+				throw new DataTooLongException(msg);
+			}
+		}
+		assert dataUsedBits != -1;
+		return version;
+	}
+	
+	
+	//Returns the highest error correction level, not lower than the given one, at which
+	//the given segments still fit in the given version number.
+	static Ecc boostEcl(List<QrSegment> segs, int version, Ecc ecl) {
+		int dataUsedBits = QrSegment.getTotalBits(segs, version);
+		//Increase the error correction level while the data still fits in the current version number
+		for (Ecc newEcl : Ecc.values()) {  // From low to high
+			if (newEcl.ordinal() > ecl.ordinal() && dataUsedBits <= getNumDataCodewords(version, newEcl) * 8)
+				ecl = newEcl;
+		}
+		return ecl;
+	}
+	
+	
+	//Returns the data codewords for the given segments at the given version and error correction level:
+	//the concatenated segments, the terminator, and the padding up to the data capacity. The segments must fit.
+	static byte[] packDataCodewords(List<QrSegment> segs, int version, Ecc ecl) {
+		//Concatenate all segments to create the data bit string
+		BitBuffer bb = new BitBuffer();
+		for (QrSegment seg : segs) {
+			bb.appendBits(seg.mode.modeBits, 4);
+			bb.appendBits(seg.numChars, seg.mode.numCharCountBits(version));
+			bb.appendData(seg.data);
+		}
+		
+		//Add terminator and pad up to a byte if applicable
+		int dataCapacityBits = getNumDataCodewords(version, ecl) * 8;
+		assert bb.bitLength() <= dataCapacityBits;
+		bb.appendBits(0, Math.min(4, dataCapacityBits - bb.bitLength()));
+		bb.appendBits(0, (8 - bb.bitLength() % 8) % 8);
+		assert bb.bitLength() % 8 == 0;
+		
+		//Pad with alternating bytes until data capacity is reached
+		for (int padByte = 0xEC; bb.bitLength() < dataCapacityBits; padByte ^= 0xEC ^ 0x11)
+			bb.appendBits(padByte, 8);
+		
+		//Pack bits into bytes in big-endian
+		byte[] dataCodewords = new byte[bb.bitLength() / 8];
+		for (int i = 0; i < bb.bitLength(); i++)
+			dataCodewords[i >>> 3] |= bb.getBit(i) << (7 - (i & 7));
+		return dataCodewords;
+	}
+	
+	
+	//Public immutable scalar parameters:
+	//The version number of this QR Code, which is between 1 and 40
+	public final int version;
+	
+	//The width and height of this QR Code, measured in modules, between 21 and 177. size = 4*version + 17
+	public final int size;
+	
+	//ECL used in the QR code
+	public final Ecc errorCorrectionLevel;
+	
+	//The index of the mask used in the QR code which is between 0 and 7
+	public final int mask;
+	
+	// Private grids of modules/pixels, with dimensions of size*size:
+	// The modules of this QR Code (false = light, true = dark).
+	// Only used while the constructor runs; packed into packedModules and discarded when it finishes.
+	private boolean[][] modules;
+	
+	// The final modules packed row-major, MSB-first, rowStride bytes per row (1 = dark).
+	// Unused bits at the end of each row are 0. Immutable after constructor finishes.
+	// Null in a compact QR Code, whose modules are rebuilt from its codewords by modules().
+	private byte[] packedModules;
+	
+	// The interleaved data and ECC codewords of a compact QR Code (see toCompact()), otherwise null.
+	private final byte[] codewords;
+	
+	// Whether a compact QR Code keeps its rebuilt modules in softModules for later calls.
+	private final boolean cacheModules;
+	
+	// The most recently rebuilt modules of a compact QR Code, if cacheModules is set.
+	private volatile SoftReference<byte[]> softModules;
+	
+	// Number of bytes per row in packedModules, equal to ceil(size / 8).
+	private final int rowStride;
+	
+	// Indicates function modules that are not subjected to masking. Discarded when constructor finishes.
+	private boolean[][] isFunction;
+	
+	
+	//Constructs a QR code with the specified version number.
+	public QrCode(int ver, Ecc ecl, byte[] dataCodewords, int msk) {
+		this(ver, ecl, dataCodewords, msk, null, 0);
+	}
+	
+	//Constructs a QR code like the public constructor, except that the Reed-Solomon division of each block
+	//resumes from eccStates (from reedSolomonPrefixStates() over the first eccStateLen data codewords,
+	//which must equal those of dataCodewords) instead of starting over. eccStates may be null.
+	QrCode(int ver, Ecc ecl, byte[] dataCodewords, int msk, byte[][] eccStates, int eccStateLen) {
+		this(ver, ecl, dataCodewords, msk, eccStates, eccStateLen, MaskObjective.PENALTY, 0, false);
+	}
+	
+	//Constructs a QR code like the constructor above, choosing an automatic mask as described in encodeSegments(),
+	//with the penalty scores computed in parallel if parallelMasks is true (see encodeSegmentsParallel()).
+	QrCode(int ver, Ecc ecl, byte[] dataCodewords, int msk, byte[][] eccStates, int eccStateLen,
+			MaskObjective objective, double penaltyTolerance, boolean parallelMasks) {
+		//Check arguments and initialize fields
+		if (ver < MIN_VERSION || ver > MAX_VERSION)
+			throw new IllegalArgumentException("Version value out of range");
+		if (msk < -1 || msk > 7)
+			throw new IllegalArgumentException("Mask value out of range");
+		version = ver;
+		size = ver * 4 + 17;
+		rowStride = (size + 7) >>> 3;
+		errorCorrectionLevel = Objects.requireNonNull(ecl);
+		Objects.requireNonNull(dataCodewords);
+		codewords = null;
+		cacheModules = false;
+		modules    = new boolean[size][size];  //Initially all light
+		isFunction = new boolean[size][size];
+		
+		//Compute ECC, draw modules, do masking
+		drawFunctionPatterns();
+		byte[] allCodewords = addEccAndInterleave(dataCodewords, eccStates, eccStateLen);
+		drawCodewords(allCodewords);
+		
+		//Do masking
+		if (msk == -1) {  //Automatically choose best mask
+			int minPenalty = Integer.MAX_VALUE;
+			int[] penalties = parallelMasks ? getMaskPenaltiesInParallel() : new int[8];
+			for (int i = 0; i < 8; i++) {
+				if (!parallelMasks) {
+					applyMask(i);
+					drawFormatBits(i);
+					penalties[i] = getPenaltyScore();
+					applyMask(i);  // Undoes the mask due to XOR
+				}
+				int penalty = penalties[i];
+				if (penalty < minPenalty) {
+					msk = i;
+					minPenalty = penalty;
+				}
+			}
+			if (objective != MaskObjective.PENALTY && penaltyTolerance > 0) {
+				//Among the masks within the tolerance, take the smallest output (ties go to the lower penalty)
+				double maxPenalty = minPenalty * (1 + penaltyTolerance);
+				long minCost = Long.MAX_VALUE;
+				for (int i = 0; i < 8; i++) {
+					if (penalties[i] > maxPenalty)
+						continue;
+					applyMask(i);
+					drawFormatBits(i);
+					long cost = getOutputCost(objective);
+					if (cost < minCost || cost == minCost && penalties[i] < penalties[msk]) {
+						msk = i;
+						minCost = cost;
+					}
+					applyMask(i);
+				}
+			}
+		}
+		assert 0 <= msk && msk <= 7;
+		mask = msk;
+		applyMask(msk);  //Apply the final choice of mask
+		drawFormatBits(msk);  //Overwrite old format bits
+		
+		packedModules = packModules(modules, rowStride);
+		modules = null;
+		isFunction = null;
+	}
+	
+	//Constructs a QR code directly from its final modules, packed as described by getRowStride().
+	//The array is used as is, not copied, and must not be modified afterwards.
+	QrCode(int ver, Ecc ecl, int msk, byte[] packed) {
+		if (ver < MIN_VERSION || ver > MAX_VERSION)
+			throw new IllegalArgumentException("Version value out of range");
+		if (msk < 0 || msk > 7)
+			throw new IllegalArgumentException("Mask value out of range");
+		version = ver;
+		size = ver * 4 + 17;
+		rowStride = (size + 7) >>> 3;
+		errorCorrectionLevel = Objects.requireNonNull(ecl);
+		mask = msk;
+		if (packed.length != size * rowStride)
+			throw new IllegalArgumentException("Module array length mismatch");
+		packedModules = packed;
+		codewords = null;
+		cacheModules = false;
+	}
+	
+	//Constructs a compact QR Code from its interleaved codewords, which are used as is, not copied.
+	private QrCode(int ver, Ecc ecl, int msk, byte[] codewords, boolean cacheModules) {
+		version = ver;
+		size = ver * 4 + 17;
+		rowStride = (size + 7) >>> 3;
+		errorCorrectionLevel = ecl;
+		mask = msk;
+		this.codewords = codewords;
+		this.cacheModules = cacheModules;
+	}
+	
+	//Constructs an unmasked symbol of the given version with only the function patterns drawn,
+	//keeping isFunction. Only used by getDataModuleOrder().
+	private QrCode(int ver) {
+		version = ver;
+		size = ver * 4 + 17;
+		rowStride = (size + 7) >>> 3;
+		errorCorrectionLevel = Ecc.LOW;
+		mask = 0;
+		codewords = null;
+		cacheModules = false;
+		modules    = new boolean[size][size];
+		isFunction = new boolean[size][size];
+		drawFunctionPatterns();
+	}
+	
+	//Returns the color of the module at the specified coordiantes, which is 0 for light and 1 for dark.
+	public boolean getModule(int x, int y) {
+		return 0 <= x && x < size && 0 <= y && y < size
+			&& ((modules()[y * rowStride + (x >>> 3)] >>> (7 - (x & 7))) & 1) != 0;
+	}
+	
+	//Returns the number of bytes per row in the packed layout used by writeTo(byte[], int) and asByteBuffer(),
+	//which is ceil(size / 8). Rows are row-major, MSB-first (bit 7 of the first byte is x = 0), 1 = dark.
+	public int getRowStride() {
+		return rowStride;
+	}
+	
+	//Copies the packed modules into dst starting at offset, using getRowStride() bytes per row.
+	//Exactly size * getRowStride() bytes are written. Unused bits at the end of each row are 0.
+	public void writeTo(byte[] dst, int offset) {
+		writeTo(dst, offset, rowStride);
+	}
+	
+	//Copies the packed modules into dst starting at offset, using the given number of bytes per row
+	//(at least getRowStride(), e.g. rounded up for a driver's scanline alignment). Padding bytes at the
+	//end of each row are set to 0. Exactly (size - 1) * dstRowStride + getRowStride() bytes are written.
+	public void writeTo(byte[] dst, int offset, int dstRowStride) {
+		Objects.requireNonNull(dst);
+		if (dstRowStride < rowStride)
+			throw new IllegalArgumentException("Row stride too small");
+		if (offset < 0 || (long)(size - 1) * dstRowStride + rowStride > dst.length - (long)offset)
+			throw new IndexOutOfBoundsException();
+		byte[] grid = modules();
+		if (dstRowStride == rowStride) {
+			System.arraycopy(grid, 0, dst, offset, grid.length);
+			return;
+		}
+		for (int y = 0; y < size; y++, offset += dstRowStride) {
+			System.arraycopy(grid, y * rowStride, dst, offset, rowStride);
+			if (y < size - 1)
+				Arrays.fill(dst, offset + rowStride, offset + dstRowStride, (byte)0);
+		}
+	}
+	
+	//Returns a read-only view (no copy) of the packed modules, in the layout described by getRowStride().
+	//Each call returns an independent buffer positioned at 0 with a limit of size * getRowStride().
+	public ByteBuffer asByteBuffer() {
+		return ByteBuffer.wrap(modules()).asReadOnlyBuffer();
+	}
+	
+	//Returns the number of bytes that writeTo(ByteBuffer, byte[]) writes for this QR Code with a payload
+	//hash of the given length: a 4-byte header, the hash, and size * getRowStride() bytes of modules.
+	//This is at most 4075 + hashLength bytes (version 40).
+	public int getSerializedLength(int hashLength) {
+		if (hashLength < 0 || hashLength > 255)
+			throw new IllegalArgumentException("Hash length out of range");
+		return 4 + hashLength + size * rowStride;
+	}
+	
+	//Writes this QR Code in the compact binary format at the buffer's position, and advances it:
+	//the format version (1), the version number, the error correction level (bits 4-3) and mask (bits 2-0),
+	//the hash length, the payload hash, then the packed modules as described by getRowStride().
+	//payloadHash is an optional (null or up to 255 bytes) caller-defined digest of the encoded payload,
+	//e.g. for cache lookups. Throws BufferOverflowException, leaving the buffer unchanged, if it lacks room.
+	public void writeTo(ByteBuffer dst, byte[] payloadHash) {
+		Objects.requireNonNull(dst);
+		int hashLen = payloadHash == null ? 0 : payloadHash.length;
+		if (dst.remaining() < getSerializedLength(hashLen))
+			throw new BufferOverflowException();
+		dst.put((byte)FORMAT_VERSION).put((byte)version)
+			.put((byte)(errorCorrectionLevel.ordinal() << 3 | mask)).put((byte)hashLen);
+		if (payloadHash != null)
+			dst.put(payloadHash);
+		dst.put(modules());
+	}
+	
+	//Reads a QR Code written by writeTo(ByteBuffer, byte[]) at the buffer's position, and advances past it.
+	//The modules are copied as they are, without redoing any encoding, ECC or masking work. Throws
+	//IllegalArgumentException if the data is not in the format, or BufferUnderflowException if it is
+	//truncated; either way the buffer's position is unchanged.
+	public static QrCode readFrom(ByteBuffer src) {
+		int start = src.position();
+		int hashLen = readHeader(src, start);
+		int ver = src.get(start + 1);
+		int size = ver * 4 + 17;
+		int stride = (size + 7) >>> 3;
+		if (src.remaining() < 4 + hashLen + size * stride)
+			throw new BufferUnderflowException();
+		byte[] packed = new byte[size * stride];
+		src.get(start + 4 + hashLen, packed);
+		int unusedMask = 0xFF >>> (((size - 1) & 7) + 1);  //Bits after the last module of each row
+		for (int i = stride - 1; i < packed.length; i += stride) {
+			if ((packed[i] & unusedMask) != 0)
+				throw new IllegalArgumentException("Nonzero padding bits");
+		}
+		int eclMask = src.get(start + 2);
+		QrCode result = new QrCode(ver, Ecc.values()[eclMask >>> 3], eclMask & 7, packed);
+		src.position(start + 4 + hashLen + packed.length);
+		return result;
+	}
+	
+	//Returns the payload hash of the QR Code written by writeTo(ByteBuffer, byte[]) at the buffer's position,
+	//or an empty array if it was written without one. The buffer's position is unchanged, and the modules
+	//are not read, so this is a cheap check before readFrom().
+	public static byte[] peekPayloadHash(ByteBuffer src) {
+		int start = src.position();
+		byte[] result = new byte[readHeader(src, start)];
+		if (src.remaining() < 4 + result.length)
+			throw new BufferUnderflowException();
+		src.get(start + 4, result);
+		return result;
+	}
+	
+	//Validates the 4-byte header at the given index and returns the hash length.
+	private static int readHeader(ByteBuffer src, int start) {
+		if (src.remaining() < 4)
+			throw new BufferUnderflowException();
+		if (src.get(start) != FORMAT_VERSION)
+			throw new IllegalArgumentException("Unsupported format version");
+		int ver = src.get(start + 1);
+		int eclMask = src.get(start + 2) & 0xFF;
+		if (ver < MIN_VERSION || ver > MAX_VERSION || eclMask >= Ecc.values().length << 3)
+			throw new IllegalArgumentException("Invalid header");
+		return src.get(start + 3) & 0xFF;
+	}
+	
+	//Returns the internal packed module array. Callers in this package must not modify it.
+	byte[] getPackedModules() {
+		return modules();
+	}
+	
+	//Returns a QR Code with the same modules that stores only the version, error correction level, mask and the
+	//interleaved data and ECC codewords (getNumRawDataModules(version) / 8 bytes, from 26 to 3706), for keeping
+	//many QR Codes in memory that are rarely drawn. The modules are rebuilt from the codewords on first use,
+	//with the layout tables shared by all QR Codes of the version. If cacheModules is true they are kept in a soft
+	//reference, so the garbage collector can drop them again under memory pressure; if false every call that
+	//reads modules rebuilds them, so it should read them in bulk with writeTo() or asByteBuffer(), not getModule().
+	public QrCode toCompact(boolean cacheModules) {
+		return new QrCode(version, errorCorrectionLevel, mask, codewords != null ? codewords : readCodewords(), cacheModules);
+	}
+	
+	//Returns a compact QR Code (see toCompact()) with the given version, error correction level, mask and interleaved
+	//codewords, as returned by getCodewords(). The codewords are copied, and the validity of their ECC is not checked.
+	public static QrCode fromCodewords(int ver, Ecc ecl, int msk, byte[] codewords, boolean cacheModules) {
+		Objects.requireNonNull(ecl);
+		Objects.requireNonNull(codewords);
+		if (ver < MIN_VERSION || ver > MAX_VERSION)
+			throw new IllegalArgumentException("Version value out of range");
+		if (msk < 0 || msk > 7)
+			throw new IllegalArgumentException("Mask value out of range");
+		if (codewords.length != getNumRawDataModules(ver) / 8)
+			throw new IllegalArgumentException("Codeword count mismatch");
+		return new QrCode(ver, ecl, msk, codewords.clone(), cacheModules);
+	}
+	
+	//Returns a new array of the interleaved data and ECC codewords of this QR Code, in the order they are drawn.
+	public byte[] getCodewords() {
+		return codewords != null ? codewords.clone() : readCodewords();
+	}
+	
+	//Reads the codewords back from the unmasked modules.
+	private byte[] readCodewords() {
+		QrLayout layout = QrLayout.get(version);
+		byte[] grid = modules().clone();
+		layout.applyMask(grid, mask);
+		byte[] result = new byte[layout.getNumCodewords()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = (byte)layout.readCodeword(grid, i);
+		return result;
+	}
+	
+	//Returns the packed modules, rebuilding those of a compact QR Code from its codewords if they are not cached.
+	private byte[] modules() {
+		if (packedModules != null)
+			return packedModules;
+		SoftReference<byte[]> ref = softModules;
+		byte[] result = ref != null ? ref.get() : null;
+		if (result == null) {
+			QrLayout layout = QrLayout.get(version);
+			result = layout.newGrid();
+			for (int i = 0; i < codewords.length; i++)
+				layout.drawCodeword(result, i, codewords[i] & 0xFF);
+			layout.applyMask(result, mask);
+			layout.drawFormatBits(result, errorCorrectionLevel, mask);
+			if (cacheModules)
+				softModules = new SoftReference<>(result);  //Racing threads build identical grids
+		}
+		return result;
+	}
+	
+	//Returns the positions (y * size + x) of the data modules of the given version in the order that
+	//drawCodewords() fills them, so bit 7 - j of codeword i is drawn at index i * 8 + j. Remainder bits
+	//are excluded. The result is cached per version and shared, so callers must not modify it.
+	static int[] getDataModuleOrder(int ver) {
+		int[] result = dataModuleOrders.get(ver);
+		if (result == null) {
+			QrCode blank = new QrCode(ver);
+			int size = blank.size;
+			result = new int[getNumRawDataModules(ver) / 8 * 8];
+			int i = 0;
+			for (int right = size - 1; right >= 1; right -= 2) {  //Same zigzag scan as drawCodewords()
+				if (right == 6)
+					right = 5;
+				for (int vert = 0; vert < size; vert++) {
+					for (int j = 0; j < 2; j++) {
+						int x = right - j;
+						boolean upward = ((right + 1) & 2) == 0;
+						int y = upward ? size - 1 - vert : vert;
+						if (!blank.isFunction[y][x] && i < result.length) {
+							result[i] = y * size + x;
+							i++;
+						}
+					}
+				}
+			}
+			assert i == result.length;
+			dataModuleOrders.set(ver, result);  //Racing threads compute identical arrays
+		}
+		return result;
+	}
+	
+	//Returns the function patterns of the given version in the packed layout described by getRowStride(): the modules
+	//(with the format bits of mask 0 at error correction level LOW) and the function module mask. Used by QrLayout.
+	static byte[][] getFunctionPatterns(int ver) {
+		QrCode blank = new QrCode(ver);
+		return new byte[][] {packModules(blank.modules, blank.rowStride), packModules(blank.isFunction, blank.rowStride)};
+	}
+	
+	//Packs the given grid row-major and MSB-first into a new array with the given number of bytes per row.
+	private static byte[] packModules(boolean[][] grid, int stride) {
+		byte[] result = new byte[grid.length * stride];
+		for (int y = 0; y < grid.length; y++) {
+			boolean[] row = grid[y];
+			for (int x = 0, i = y * stride; x < row.length; x++) {
+				if (row[x])
+					result[i + (x >>> 3)] |= 0x80 >>> (x & 7);
+			}
+		}
+		return result;
+	}
+	
+	//Reads this object's version field, and draws and marks all function modules.
+	private void drawFunctionPatterns() {
+		//Draw horizontal and vertical timing patterns
+		for (int i = 0; i < size; i++) {
+			setFunctionModule(6, i, i % 2 == 0);
+			setFunctionModule(i, 6, i % 2 == 0);
+		}
+		
+		//Draw 3 finder patterns (all corners except bottom right; overwrites some timing modules)
+		drawFinderPattern(3, 3);
+		drawFinderPattern(size - 4, 3);
+		drawFinderPattern(3, size - 4);
+		
+		//Draw numerous alignment patterns
+		int[] alignPatPos = getAlignmentPatternPositions(version);
+		int numAlign = alignPatPos.length;
+		for (int i = 0; i < numAlign; i++) {
+			for (int j = 0; j < numAlign; j++) {
+				//Don't draw on the three finder corners
+				if (!(i == 0 && j == 0 || i == 0 && j == numAlign - 1 || i == numAlign - 1 && j == 0))
+					drawAlignmentPattern(alignPatPos[i], alignPatPos[j]);
+			}
+		}
+		
+		//Draw configuration data
+		drawFormatBits(0);  //Dummy mask value; overwritten later in the constructor
+		drawVersion();
+	}
+	
+	
+	//Draws two copies of the format bits (with its own error correction code)
+	//based on the given mask and this object's error correction level field.
+	private void drawFormatBits(int msk) {
+		int bits = getFormatBits(errorCorrectionLevel, msk);
+		
+		//Draw first copy
+		for (int i = 0; i <= 5; i++)
+			setFunctionModule(8, i, getBit(bits, i));
+		setFunctionModule(8, 7, getBit(bits, 6));
+		setFunctionModule(8, 8, getBit(bits, 7));
+		setFunctionModule(7, 8, getBit(bits, 8));
+		for (int i = 9; i < 15; i++)
+			setFunctionModule(14 - i, 8, getBit(bits, i));
+		
+		//Draw second copy
+		for (int i = 0; i < 8; i++)
+			setFunctionModule(size - 1 - i, 8, getBit(bits, i));
+		for (int i = 8; i < 15; i++)
+			setFunctionModule(8, size - 15 + i, getBit(bits, i));
+		setFunctionModule(8, size - 8, true);  // Always dark
+	}
+	
+	
+	//Returns the 15 format bits (with their own error correction code) for the given error correction level and mask.
+	static int getFormatBits(Ecc ecl, int msk) {
+		//Calculate error correction code and pack bits
+		int data = ecl.formatBits << 3 | msk;  // errCorrLvl is uint2, mask is uint3
+		int rem = data;
+		for (int i = 0; i < 10; i++)
+			rem = (rem << 1) ^ ((rem >>> 9) * 0x537);
+		int bits = (data << 10 | rem) ^ 0x5412;  // uint15
+		assert bits >>> 15 == 0;
+		return bits;
+	}
+	
+	
+	//Draws two copies of the version bits (with its own error correction code),
+	//based on this object's version field, iff 7 <= version <= 40.
+	private void drawVersion() {
+		if (version < 7)
+			return;
+		
+		//Calculate error correction code and pack bits
+		int rem = version;  // version is uint6, in the range [7, 40]
+		for (int i = 0; i < 12; i++)
+			rem = (rem << 1) ^ ((rem >>> 11) * 0x1F25);
+		int bits = version << 12 | rem;  // uint18
+		assert bits >>> 18 == 0;
+		
+		//Draw two copies
+		for (int i = 0; i < 18; i++) {
+			boolean bit = getBit(bits, i);
+			int a = size - 11 + i % 3;
+			int b = i / 3;
+			setFunctionModule(a, b, bit);
+			setFunctionModule(b, a, bit);
+		}
+	}
+	
+	
+	//Draws a 9*9 finder pattern including the border separator,
+	//with the center module at (x, y). Modules can be out of bounds.
+	private void drawFinderPattern(int x, int y) {
+		for (int dy = -4; dy <= 4; dy++) {
+			for (int dx = -4; dx <= 4; dx++) {
+				int dist = Math.max(Math.abs(dx), Math.abs(dy));  //Chebyshev/infinity norm
+				int xx = x + dx, yy = y + dy;
+				if (0 <= xx && xx < size && 0 <= yy && yy < size)
+					setFunctionModule(xx, yy, dist != 2 && dist != 4);
+			}
+		}
+	}
+	
+	
+	//Draws a 5*5 alignment pattern, with the center module
+	//at (x, y). All modules must be in bounds.
+	private void drawAlignmentPattern(int x, int y) {
+		for (int dy = -2; dy <= 2; dy++) {
+			for (int dx = -2; dx <= 2; dx++)
+				setFunctionModule(x + dx, y + dy, Math.max(Math.abs(dx), Math.abs(dy)) != 1);
+		}
+	}
+	
+	
+	//Sets the color of a module and marks it as a function module.
+	//Only used by the constructor. Coordinates must be in bounds.
+	private void setFunctionModule(int x, int y, boolean isDark) {
+		modules[y][x] = isDark;
+		isFunction[y][x] = true;
+	}
+	
+	//Returns a new byte string representing the given data with the appropriate error correction
+	//codewords appended to it, based on this object's version and error correction level.
+	//If eccStates is not null, the first eccStateLen data codewords are already folded into it.
+	private byte[] addEccAndInterleave(byte[] data, byte[][] eccStates, int eccStateLen) {
+		Objects.requireNonNull(data);
+		if (data.length != getNumDataCodewords(version, errorCorrectionLevel))
+			throw new IllegalArgumentException();
+		
+		//Calculate parameter numbers
+		int numBlocks = NUM_ERROR_CORRECTION_BLOCKS[errorCorrectionLevel.ordinal()][version];
+		int blockEccLen = ECC_CODEWORDS_PER_BLOCK  [errorCorrectionLevel.ordinal()][version];
+		int rawCodewords = getNumRawDataModules(version) / 8;
+		int numShortBlocks = numBlocks - rawCodewords % numBlocks;
+		int shortBlockLen = rawCodewords / numBlocks;
+		
+		//Split data into blocks and append ECC to each block
+		byte[][] blocks = new byte[numBlocks][];
+		byte[] rsDiv = getReedSolomonDivisor(blockEccLen);
+		for (int i = 0, k = 0; i < numBlocks; i++) {
+			int datLen = shortBlockLen - blockEccLen + (i < numShortBlocks ? 0 : 1);
+			byte[] block = new byte[shortBlockLen + 1];
+			System.arraycopy(data, k, block, 0, datLen);
+			int done = eccStates == null ? 0 : Math.max(Math.min(eccStateLen - k, datLen), 0);
+			byte[] ecc = done > 0 ? eccStates[i].clone() : new byte[blockEccLen];
+			reedSolomonUpdateRemainder(data, k + done, datLen - done, rsDiv, ecc);
+			System.arraycopy(ecc, 0, block, block.length - blockEccLen, ecc.length);
+			blocks[i] = block;
+			k += datLen;
+		}
+		
+		//Interleave (not concatenate) the bytes from every block into a single sequence
+		byte[] result = new byte[rawCodewords];
+		for (int i = 0, k = 0; i < blocks[0].length; i++) {
+			for (int j = 0; j < blocks.length; j++) {
+				//Skip the padding byte in short blocks
+				if (i != shortBlockLen - blockEccLen || j >= numShortBlocks) {
+					result[k] = blocks[j][i];
+					k++;
+				}
+			}
+		}
+		return result;
+	}
+	
+	
+	//Draws the given sequence of 8-bit codewords (data and error correction) onto the entire
+	//data area of this QR Code. Function modules need to be marked off before this is called.
+	private void drawCodewords(byte[] data) {
+		Objects.requireNonNull(data);
+		if (data.length != getNumRawDataModules(version) / 8)
+			throw new IllegalArgumentException();
+		
+		int i = 0;  //Bit index into the data
+		//Do the funny zigzag scan
+		for (int right = size - 1; right >= 1; right -= 2) {  //Index of right column in each column pair
+			if (right == 6)
+				right = 5;
+			for (int vert = 0; vert < size; vert++) {  //Vertical counter
+				for (int j = 0; j < 2; j++) {
+					int x = right - j;  //Actual x coordinate
+					boolean upward = ((right + 1) & 2) == 0;
+					int y = upward ? size - 1 - vert : vert;  //Actual y coordinate
+					if (!isFunction[y][x] && i < data.length * 8) {
+						modules[y][x] = getBit(data[i >>> 3], 7 - (i & 7));
+						i++;
+					}
+					//If this QR Code has any remainder bits (0 to 7), they were assigned as
+					//0/false/light by the constructor and are left unchanged by this method
+				}
+			}
+		}
+		assert i == data.length * 8;
+	}
+	
+	
+	//XORs the codeword modules in this QR Code with the given mask pattern.
+	//The function modules must be marked and the codeword bits must be drawn
+	//before masking. Due to the arithmetic of XOR, calling applyMask() with
+	//the same mask value a second time will undo the mask. A final well-formed
+	//QR Code needs exactly one (not zero, two, etc.) mask applied.
+	private void applyMask(int msk) {
+		if (msk < 0 || msk > 7)
+			throw new IllegalArgumentException("Mask value out of range");
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++)
+				modules[y][x] ^= getMaskBit(msk, x, y) & !isFunction[y][x];
+		}
+	}
+	
+	
+	//Returns the penalty scores of the eight masks applied to the current unmasked modules, each computed on the
+	//common fork-join pool in a packed copy with the shared QrLayout, whose scores equal those of getPenaltyScore().
+	private int[] getMaskPenaltiesInParallel() {
+		QrLayout layout = QrLayout.get(version);
+		byte[] unmasked = packModules(modules, rowStride);
+		Ecc ecl = errorCorrectionLevel;
+		return IntStream.range(0, 8).parallel().map(i -> {
+			byte[] grid = unmasked.clone();
+			layout.applyMask(grid, i);
+			layout.drawFormatBits(grid, ecl, i);
+			return layout.getPenaltyScore(grid, new int[7]);
+		}).toArray();
+	}
+	
+	//Returns whether the given mask pattern (0 to 7) inverts the module at the given coordinates.
+	static boolean getMaskBit(int msk, int x, int y) {
+		switch (msk) {
+			case 0:  return (x + y) % 2 == 0;
+			case 1:  return y % 2 == 0;
+			case 2:  return x % 3 == 0;
+			case 3:  return (x + y) % 3 == 0;
+			case 4:  return (x / 3 + y / 2) % 2 == 0;
+			case 5:  return x * y % 2 + x * y % 3 == 0;
+			case 6:  return (x * y % 2 + x * y % 3) % 2 == 0;
+			case 7:  return ((x + y) % 2 + x * y % 3) % 2 == 0;
+			default:  throw new AssertionError();
+		}
+	}
+	
+	
+	//Calculates and returns the penalty score based on state of this QR Code's current modules.
+	//This is used by the automatic mask choice algorithm to find the mask pattern that yields the lowest score.
+	private int getPenaltyScore() {
+		int result = 0;
+		
+		//Adjacent modules in row having same color, and finder-like patterns
+		for (int y = 0; y < size; y++) {
+			boolean runColor = false;
+			int runX = 0;
+			int[] runHistory = new int[7];
+			for (int x = 0; x < size; x++) {
+				if (modules[y][x] == runColor) {
+					runX++;
+					if (runX == 5)
+						result += PENALTY_N1;
+					else if (runX > 5)
+						result++;
+				} else {
+					finderPenaltyAddHistory(runX, runHistory, size);
+					if (!runColor)
+						result += finderPenaltyCountPatterns(runHistory, size) * PENALTY_N3;
+					runColor = modules[y][x];
+					runX = 1;
+				}
+			}
+			result += finderPenaltyTerminateAndCount(runColor, runX, runHistory, size) * PENALTY_N3;
+		}
+		//Adjacent modules in column having same color, and finder-like patterns
+		for (int x = 0; x < size; x++) {
+			boolean runColor = false;
+			int runY = 0;
+			int[] runHistory = new int[7];
+			for (int y = 0; y < size; y++) {
+				if (modules[y][x] == runColor) {
+					runY++;
+					if (runY == 5)
+						result += PENALTY_N1;
+					else if (runY > 5)
+						result++;
+				} else {
+					finderPenaltyAddHistory(runY, runHistory, size);
+					if (!runColor)
+						result += finderPenaltyCountPatterns(runHistory, size) * PENALTY_N3;
+					runColor = modules[y][x];
+					runY = 1;
+				}
+			}
+			result += finderPenaltyTerminateAndCount(runColor, runY, runHistory, size) * PENALTY_N3;
+		}
+		
+		//2*2 blocks of modules having same color
+		for (int y = 0; y < size - 1; y++) {
+			for (int x = 0; x < size - 1; x++) {
+				boolean color = modules[y][x];
+				if (  color == modules[y][x + 1] &&
+				      color == modules[y + 1][x] &&
+				      color == modules[y + 1][x + 1])
+					result += PENALTY_N2;
+			}
+		}
+		
+		//Balance of dark and light modules
+		int dark = 0;
+		for (boolean[] row : modules) {
+			for (boolean color : row) {
+				if (color)
+					dark++;
+			}
+		}
+		int total = size * size;  //Note that size is odd, so dark/total != 1/2
+		//Compute the smallest integer k >= 0 such that (45-5k)% <= dark/total <= (55+5k)%
+		int k = (Math.abs(dark * 20 - total * 10) + total - 1) / total - 1;
+		assert 0 <= k && k <= 9;
+		result += k * PENALTY_N4;
+		assert 0 <= result && result <= 2568888;  // Non-tight upper bound based on default values of PENALTY_N1, ..., N4
+		return result;
+	}
+	
+	//Returns the output size measure of this QR Code's current modules for the given objective.
+	//Used by the automatic mask choice when an objective other than PENALTY is requested.
+	private long getOutputCost(MaskObjective objective) {
+		assert objective == MaskObjective.RUN_COUNT;
+		int runs = 0;
+		for (boolean[] row : modules) {
+			boolean prev = false;
+			for (boolean color : row) {
+				if (color && !prev)
+					runs++;
+				prev = color;
+			}
+		}
+		return runs;
+	}
+	
+	//Returns a new ascending list of positions of alignment patterns for the given version number.
+	//Each position is in the range [0,177), and are used on both the x and y axes; the three combinations
+	//at the finder corners (first/first, first/last, last/first) have no pattern. Public so that renderers
+	//can locate the patterns, e.g. to draw them in another style.
+	//This could be implemented as lookup table of 40 variable-length lists of unsigned bytes.
+	public static int[] getAlignmentPatternPositions(int ver) {
+		if (ver < MIN_VERSION || ver > MAX_VERSION)
+			throw new IllegalArgumentException("Version number out of range");
+		if (ver == 1)
+			return new int[]{};
+		else {
+			int numAlign = ver / 7 + 2;
+			int step;
+			if (ver == 32)  //Special snowflake
+				step = 26;
+			else
+				step = (ver * 4 + numAlign * 2 + 1) / (numAlign * 2 - 2) * 2;
+			int[] result = new int[numAlign];
+			result[0] = 6;
+			int size = ver * 4 + 17;
+			for (int i = result.length - 1, pos = size - 7; i >= 1; i--, pos -= step)
+				result[i] = pos;
+			return result;
+		}
+	}
+	
+	
+	//Returns the number of data bits that can be stored in a QR Code of the given version number, after
+	//all function modules are excluded. This includes remainder bits, so it might not be a multiple of 8.
+	//The result is in the range [208, 29648]. This could be implemented as a 40-entry lookup table.
+	static int getNumRawDataModules(int ver) {
+		if (ver < MIN_VERSION || ver > MAX_VERSION)
+			throw new IllegalArgumentException("Version number out of range");
+		
+		int size = ver * 4 + 17;
+		int result = size * size;   //Number of modules in the whole QR Code square
+		result -= 8 * 8 * 3;        //Subtract the three finders with separators
+		result -= 15 * 2 + 1;       //Subtract the format information and dark module
+		result -= (size - 16) * 2;  //Subtract the timing patterns (excluding finders)
+		//The five lines above are equivalent to: int result = (16 * ver + 128) * ver + 64;
+		if (ver >= 2) {
+			int numAlign = ver / 7 + 2;
+			result -= (numAlign - 1) * (numAlign - 1) * 25;  //Subtract alignment patterns not overlapping with timing patterns
+			result -= (numAlign - 2) * 2 * 20;  //Subtract alignment patterns that overlap with timing patterns
+			//The two lines above are equivalent to: result -= (25 * numAlign - 10) * numAlign - 55;
+			if (ver >= 7)
+				result -= 6 * 3 * 2;  //Subtract version information
+		}
+		assert 208 <= result && result <= 29648;
+		return result;
+	}
+	
+	
+	//Returns a Reed-Solomon ECC generator polynomial for the given degree. This could be
+	//implemented as a lookup table over all possible parameter values, instead of as an algorithm.
+	private static byte[] reedSolomonComputeDivisor(int degree) {
+		if (degree < 1 || degree > 255)
+			throw new IllegalArgumentException("Degree out of range");
+		//Polynomial coefficients are stored from highest to lowest power, excluding the leading term which is always 1.
+		//For example the polynomial x^3 + 255x^2 + 8x + 93 is stored as the uint8 array {255, 8, 93}.
+		byte[] result = new byte[degree];
+		result[degree - 1] = 1;  //Start off with the monomial x^0
+		
+		//Compute the product polynomial (x - r^0) * (x - r^1) * (x - r^2) * ... * (x - r^{degree-1}),
+		//and drop the highest monomial term which is always 1x^degree.
+		//Note that r = 0x02, which is a generator element of this field GF(2^8/0x11D).
+		int root = 1;
+		for (int i = 0; i < degree; i++) {
+			//Multiply the current product by (x - r^i)
+			for (int j = 0; j < result.length; j++) {
+				result[j] = (byte)reedSolomonMultiply(result[j] & 0xFF, root);
+				if (j + 1 < result.length)
+					result[j] ^= result[j + 1];
+			}
+			root = reedSolomonMultiply(root, 0x02);
+		}
+		return result;
+	}
+	
+	
+	//Returns the Reed-Solomon generator polynomial of the given degree from a lazily filled
+	//cache. The result is shared, so callers must not modify it.
+	static byte[] getReedSolomonDivisor(int degree) {
+		byte[] result = rsDivisors.get(degree);
+		if (result == null) {
+			result = reedSolomonComputeDivisor(degree);
+			rsDivisors.set(degree, result);
+		}
+		return result;
+	}
+	
+	
+	//Returns the Reed-Solomon error correction codeword for the given data and divisor polynomials.
+	private static byte[] reedSolomonComputeRemainder(byte[] data, byte[] divisor) {
+		Objects.requireNonNull(data);
+		Objects.requireNonNull(divisor);
+		byte[] result = new byte[divisor.length];
+		reedSolomonUpdateRemainder(data, 0, data.length, divisor, result);
+		return result;
+	}
+	
+	
+	//Continues the polynomial division in result (the remainder of the bytes divided so far)
+	//with the given range of data. The remainder of a block does not depend on later blocks,
+	//so a partial result can be saved and resumed, as reedSolomonPrefixStates() does.
+	static void reedSolomonUpdateRemainder(byte[] data, int off, int len, byte[] divisor, byte[] result) {
+		for (int j = off; j < off + len; j++)  // Polynomial division
+			reedSolomonUpdateRemainder(data[j], divisor, result);
+	}
+	
+	
+	//Continues the polynomial division in result with one data codeword.
+	static void reedSolomonUpdateRemainder(byte codeword, byte[] divisor, byte[] result) {
+		int factor = (codeword ^ result[0]) & 0xFF;
+		System.arraycopy(result, 1, result, 0, result.length - 1);
+		result[result.length - 1] = 0;
+		for (int i = 0; i < result.length; i++)
+			result[i] ^= reedSolomonMultiply(divisor[i] & 0xFF, factor);
+	}
+	
+	
+	//Returns the per-block Reed-Solomon division state after the first len data codewords of a QR Code with
+	//the given version and error correction level, for use with the package-private constructor.
+	//Blocks that start at or after len get null.
+	static byte[][] reedSolomonPrefixStates(int ver, Ecc ecl, byte[] data, int len) {
+		Objects.requireNonNull(ecl);
+		Objects.requireNonNull(data);
+		if (len < 0 || len > data.length || data.length > getNumDataCodewords(ver, ecl))
+			throw new IllegalArgumentException();
+		int numBlocks = NUM_ERROR_CORRECTION_BLOCKS[ecl.ordinal()][ver];
+		int blockEccLen = ECC_CODEWORDS_PER_BLOCK  [ecl.ordinal()][ver];
+		int rawCodewords = getNumRawDataModules(ver) / 8;
+		int numShortBlocks = numBlocks - rawCodewords % numBlocks;
+		int shortBlockLen = rawCodewords / numBlocks;
+		
+		byte[][] result = new byte[numBlocks][];
+		byte[] rsDiv = getReedSolomonDivisor(blockEccLen);
+		for (int i = 0, k = 0; i < numBlocks && k < len; i++) {
+			int datLen = shortBlockLen - blockEccLen + (i < numShortBlocks ? 0 : 1);
+			result[i] = new byte[blockEccLen];
+			reedSolomonUpdateRemainder(data, k, Math.min(len - k, datLen), rsDiv, result[i]);
+			k += datLen;
+		}
+		return result;
+	}
+	
+	
+	//Returns the product of the two given field elements modulo GF(2^8/0x11D). The arguments and result
+	//are unsigned 8-bit integers. This could be implemented as a lookup table of 256*256 entries of uint8.
+	static int reedSolomonMultiply(int x, int y) {
+		assert x >> 8 == 0 && y >> 8 == 0;
+		// Russian peasant multiplication
+		int z = 0;
+		for (int i = 7; i >= 0; i--) {
+			z = (z << 1) ^ ((z >>> 7) * 0x11D);
+			z ^= ((y >>> i) & 1) * x;
+		}
+		assert z >>> 8 == 0;
+		return z;
+	}
+	
+	
+	//Returns the number of 8-bit data (i.e. not error correction) codewords contained in any
+	//QR Code of the given version number and error correction level, with remainder bits discarded.
+	//This stateless pure function could be implemented as a (40*4)-cell lookup table.
+	static int getNumDataCodewords(int ver, Ecc ecl) {
+		return getNumRawDataModules(ver) / 8
+			- ECC_CODEWORDS_PER_BLOCK    [ecl.ordinal()][ver]
+			* NUM_ERROR_CORRECTION_BLOCKS[ecl.ordinal()][ver];
+	}
+	
+	
+	//Returns the number of error correction blocks in a QR Code of the given version and error correction level.
+	static int getNumBlocks(int ver, Ecc ecl) {
+		return NUM_ERROR_CORRECTION_BLOCKS[ecl.ordinal()][ver];
+	}
+	
+	
+	//Returns the number of error correction codewords per block in a QR Code of the given version and error correction level.
+	static int getEccCodewordsPerBlock(int ver, Ecc ecl) {
+		return ECC_CODEWORDS_PER_BLOCK[ecl.ordinal()][ver];
+	}
+	
+	
+	//Can only be called immediately after a light run is added, and
+	//returns either 0, 1, or 2. A helper function for getPenaltyScore().
+	static int finderPenaltyCountPatterns(int[] runHistory, int size) {
+		int n = runHistory[1];
+		assert n <= size * 3;
+		boolean core = n > 0 && runHistory[2] == n && runHistory[3] == n * 3 && runHistory[4] == n && runHistory[5] == n;
+		return (core && runHistory[0] >= n * 4 && runHistory[6] >= n ? 1 : 0)
+		     + (core && runHistory[6] >= n * 4 && runHistory[0] >= n ? 1 : 0);
+	}
+	
+	
+	//Must be called at the end of a line (row or column) of modules. A helper function for getPenaltyScore().
+	static int finderPenaltyTerminateAndCount(boolean currentRunColor, int currentRunLength, int[] runHistory, int size) {
+		if (currentRunColor) {  //Terminate dark run
+			finderPenaltyAddHistory(currentRunLength, runHistory, size);
+			currentRunLength = 0;
+		}
+		currentRunLength += size;  //Add light border to final run
+		finderPenaltyAddHistory(currentRunLength, runHistory, size);
+		return finderPenaltyCountPatterns(runHistory, size);
+	}
+	
+	
+	//Pushes the given value to the front and drops the last value. A helper function for getPenaltyScore().
+	static void finderPenaltyAddHistory(int currentRunLength, int[] runHistory, int size) {
+		if (runHistory[0] == 0)
+			currentRunLength += size;  //Add light border to initial run
+		System.arraycopy(runHistory, 0, runHistory, 1, runHistory.length - 1);
+		runHistory[0] = currentRunLength;
+	}
+	
+	
+	//Returns true iff the i'th bit of x is set to 1.
+	static boolean getBit(int x, int i) {
+		return ((x >>> i) & 1) != 0;
+	}
+	
+	//The minimum version number supported in the QR Code
+	public static final int MIN_VERSION =  1;
+	
+	//The maximum version number supported in the QR Code
+	public static final int MAX_VERSION = 40;
+	
+	//The current version of the binary format of writeTo(ByteBuffer, byte[]).
+	private static final int FORMAT_VERSION = 1;
+	
+	
+	//Lazily filled cache for getDataModuleOrder(), indexed by version.
+	private static final AtomicReferenceArray<int[]> dataModuleOrders = new AtomicReferenceArray<>(MAX_VERSION + 1);
+	
+	//Lazily filled cache for getReedSolomonDivisor(), indexed by degree.
+	private static final AtomicReferenceArray<byte[]> rsDivisors = new AtomicReferenceArray<>(256);
+	
+	
+	//For use in getPenaltyScore(), when evaluating which mask is best.
+	static final int PENALTY_N1 =  3;
+	static final int PENALTY_N2 =  3;
+	static final int PENALTY_N3 = 40;
+	static final int PENALTY_N4 = 10;
+	
+	
+	private static final byte[][] ECC_CODEWORDS_PER_BLOCK = {
+		//Version: (note that index 0 is for padding, and is set to an illegal value)
+		//0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40    Error correction level
+		{-1,  7, 10, 15, 20, 26, 18, 20, 24, 30, 18, 20, 24, 26, 30, 22, 24, 28, 30, 28, 28, 28, 28, 30, 30, 26, 28, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30},  //Low
+		{-1, 10, 16, 26, 18, 24, 16, 18, 22, 22, 26, 30, 22, 22, 24, 24, 28, 28, 26, 26, 26, 26, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28},  //Medium
+		{-1, 13, 22, 18, 26, 18, 24, 18, 22, 20, 24, 28, 26, 24, 20, 30, 24, 28, 28, 26, 30, 28, 30, 30, 30, 30, 28, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30},  //Quartile
+		{-1, 17, 28, 22, 16, 22, 28, 26, 26, 24, 28, 24, 28, 22, 24, 24, 30, 28, 28, 26, 28, 30, 24, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30},  //High
+	};
+	
+	private static final byte[][] NUM_ERROR_CORRECTION_BLOCKS = {
+		//Version: (note that index 0 is for padding, and is set to an illegal value)
+		//0, 1, 2, 3, 4, 5, 6, 7, 8, 9,10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40    Error correction level
+		{-1, 1, 1, 1, 1, 1, 2, 2, 2, 2, 4,  4,  4,  4,  4,  6,  6,  6,  6,  7,  8,  8,  9,  9, 10, 12, 12, 12, 13, 14, 15, 16, 17, 18, 19, 19, 20, 21, 22, 24, 25},  //Low
+		{-1, 1, 1, 1, 2, 2, 4, 4, 4, 5, 5,  5,  8,  9,  9, 10, 10, 11, 13, 14, 16, 17, 17, 18, 20, 21, 23, 25, 26, 28, 29, 31, 33, 35, 37, 38, 40, 43, 45, 47, 49},  //Medium
+		{-1, 1, 1, 2, 2, 4, 4, 6, 6, 8, 8,  8, 10, 12, 16, 12, 17, 16, 18, 21, 20, 23, 23, 25, 27, 29, 34, 34, 35, 38, 40, 43, 45, 48, 51, 53, 56, 59, 62, 65, 68},  //Quartile
+		{-1, 1, 1, 2, 4, 4, 4, 5, 6, 8, 8, 11, 11, 16, 16, 18, 16, 19, 21, 25, 25, 25, 34, 30, 32, 35, 37, 40, 42, 45, 48, 51, 54, 57, 60, 63, 66, 70, 74, 77, 81},  //High
+	};
+	
+	//What the automatic mask choice minimizes besides the penalty score, see encodeSegments().
+	public enum MaskObjective {
+		//Only the penalty score of the QR Code specification
+		PENALTY,
+		//Number of horizontal runs of dark modules, i.e. the number of rectangles of a row-merged vector image
+		RUN_COUNT,
+	}
+	
+	//ECL in a QR code
+	public enum Ecc {
+		//Must be declared in ascending order of error protection
+		//so that the implicit ordinal() and values() work properly
+		LOW(1),
+		MEDIUM(0),
+		QUARTILE(3),
+		HIGH(2);
+		
+		//In the range 0 to 3 (unsigned 2-bit integer).
+		final int formatBits;
+		
+		//Constructor.
+		private Ecc(int fb) {
+			formatBits = fb;
+		}
+	}
+	
+}
\ No newline at end of file
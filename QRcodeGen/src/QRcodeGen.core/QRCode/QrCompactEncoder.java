@@ -0,0 +1,151 @@
+package QRCode;
+import java.util.List;
+import java.util.Objects;
+
+//Encodes QR Codes with a small, fixed working set, for memory-capped runtimes where the footprint of each
+//concurrent encode matters as much as its speed. The result's packed module grid is the only large array:
+//data codewords are produced one at a time from the segments and drawn straight into their interleaved
+//positions, each block's Reed-Solomon remainder is updated as its codewords go by and drawn into the ECC
+//positions when the block ends, and masks are applied and undone in place with the shared QrLayout of the
+//version. Besides the grid (size * getRowStride() bytes, at most 177 * 23 = 4071 for version 40) an encode
+//holds one remainder of at most 30 bytes and a 7-entry run history, instead of the data, block, ECC and
+//interleaved arrays and the two boolean grids of the QrCode constructor. The results are identical to those
+//of QrCode.encodeSegments().
+//Provides static functions only; not instantiable.
+public final class QrCompactEncoder {
+	
+	//Returns a QR Code representing the specified Unicode text string, like QrCode.encodeText().
+	public static QrCode encodeText(CharSequence text, QrCode.Ecc ecl) {
+		Objects.requireNonNull(text);
+		Objects.requireNonNull(ecl);
+		return encodeSegments(QrSegment.makeSegments(text), ecl, QrCode.MIN_VERSION, QrCode.MAX_VERSION, -1, true);
+	}
+	
+	
+	//Returns a QR Code representing the specified segments with the specified encoding parameters,
+	//like QrCode.encodeSegments() with the penalty mask objective.
+	public static QrCode encodeSegments(List<QrSegment> segs, QrCode.Ecc ecl, int minVersion, int maxVersion, int mask, boolean boostEcl) {
+		Objects.requireNonNull(segs);
+		Objects.requireNonNull(ecl);
+		if (!(QrCode.MIN_VERSION <= minVersion && minVersion <= maxVersion && maxVersion <= QrCode.MAX_VERSION) || mask < -1 || mask > 7)
+			throw new IllegalArgumentException("Invalid value");
+		int version = QrCode.findMinVersion(segs, ecl, minVersion, maxVersion);
+		if (boostEcl)
+			ecl = QrCode.boostEcl(segs, version, ecl);
+		
+		QrLayout layout = QrLayout.get(version);
+		byte[] grid = layout.newGrid();
+		new CodewordWriter(layout, ecl, grid).writeSegments(segs);
+		
+		//Choose the mask with the lowest penalty score, like the QrCode constructor
+		if (mask == -1) {
+			int[] runHistory = new int[7];
+			int minPenalty = Integer.MAX_VALUE;
+			for (int i = 0; i < 8; i++) {
+				layout.applyMask(grid, i);
+				layout.drawFormatBits(grid, ecl, i);
+				int penalty = layout.getPenaltyScore(grid, runHistory);
+				if (penalty < minPenalty) {
+					mask = i;
+					minPenalty = penalty;
+				}
+				layout.applyMask(grid, i);  //Undoes the mask due to XOR
+			}
+		}
+		layout.applyMask(grid, mask);
+		layout.drawFormatBits(grid, ecl, mask);
+		return new QrCode(version, ecl, mask, grid);
+	}
+	
+	
+	//Turns the bit stream of a list of segments into data codewords, and draws each data codeword and, at the end
+	//of each block, its ECC codewords into the grid at their positions in the interleaved sequence.
+	private static final class CodewordWriter {
+		private final QrLayout layout;
+		private final byte[] grid;
+		private final int numBlocks;
+		private final int numShortBlocks;
+		private final int shortDataLen;  //Data codewords in a short block; long blocks have one more
+		private final int numDataCodewords;
+		private final byte[] rsDivisor;
+		private final byte[] remainder;  //Reed-Solomon remainder of the current block
+		
+		private int block = 0;  //Index of the current block, and of the next data codeword within it
+		private int indexInBlock = 0;
+		private int codewordCount = 0;  //Data codewords written so far
+		private int pendingBits = 0;  //Bits of the current codeword so far, in the low bitCount bits
+		private int bitCount = 0;
+		
+		
+		CodewordWriter(QrLayout layout, QrCode.Ecc ecl, byte[] grid) {
+			this.layout = layout;
+			this.grid = grid;
+			int ver = layout.version;
+			numBlocks = QrCode.getNumBlocks(ver, ecl);
+			int blockEccLen = QrCode.getEccCodewordsPerBlock(ver, ecl);
+			int rawCodewords = layout.getNumCodewords();
+			numShortBlocks = numBlocks - rawCodewords % numBlocks;
+			shortDataLen = rawCodewords / numBlocks - blockEccLen;
+			numDataCodewords = QrCode.getNumDataCodewords(ver, ecl);
+			rsDivisor = QrCode.getReedSolomonDivisor(blockEccLen);
+			remainder = new byte[blockEccLen];
+		}
+		
+		
+		//Writes the segments, the terminator and the padding, which fill all data codewords. The segments must fit.
+		void writeSegments(List<QrSegment> segs) {
+			int version = layout.version;
+			for (QrSegment seg : segs) {
+				appendBits(seg.mode.modeBits, 4);
+				appendBits(seg.numChars, seg.mode.numCharCountBits(version));
+				BitBuffer data = seg.data;
+				for (int i = 0, n = data.bitLength(); i < n; i++)
+					appendBits(data.getBit(i), 1);
+			}
+			
+			//Add terminator and pad up to a byte if applicable, then pad with alternating bytes (as QrCode.packDataCodewords())
+			int usedBits = codewordCount * 8 + bitCount;
+			appendBits(0, Math.min(4, numDataCodewords * 8 - usedBits));
+			appendBits(0, (8 - bitCount) % 8);
+			for (int padByte = 0xEC; codewordCount < numDataCodewords; padByte ^= 0xEC ^ 0x11)
+				appendBits(padByte, 8);
+			assert block == numBlocks;
+		}
+		
+		
+		private void appendBits(int val, int len) {
+			for (int i = len - 1; i >= 0; i--) {
+				pendingBits = pendingBits << 1 | (val >>> i) & 1;
+				if (++bitCount == 8) {
+					writeDataCodeword(pendingBits);
+					pendingBits = 0;
+					bitCount = 0;
+				}
+			}
+		}
+		
+		
+		private void writeDataCodeword(int value) {
+			//Data codeword i of block b is at i * numBlocks + b; the extra codeword of long blocks comes after all others
+			int index = indexInBlock < shortDataLen ? indexInBlock * numBlocks + block
+				: shortDataLen * numBlocks + block - numShortBlocks;
+			layout.drawCodeword(grid, index, value);
+			QrCode.reedSolomonUpdateRemainder((byte)value, rsDivisor, remainder);
+			codewordCount++;
+			indexInBlock++;
+			if (indexInBlock == shortDataLen + (block < numShortBlocks ? 0 : 1)) {
+				//The block is complete, so its remainder is its ECC
+				for (int e = 0; e < remainder.length; e++) {
+					layout.drawCodeword(grid, numDataCodewords + e * numBlocks + block, remainder[e] & 0xFF);
+					remainder[e] = 0;
+				}
+				block++;
+				indexInBlock = 0;
+			}
+		}
+	}
+	
+	
+	private QrCompactEncoder() {}  // Not instantiable
+	
+}
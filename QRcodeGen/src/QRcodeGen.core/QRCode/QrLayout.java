@@ -0,0 +1,231 @@
+package QRCode;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//The fixed layout of one QR Code version in the packed module format described by QrCode.getRowStride():
+//the function patterns, the grid position of every codeword bit, the positions of the format bits, and the
+//eight mask patterns. Each layout is built on first use and shared, so symbols can be assembled and masked
+//directly in a packed grid, without the boolean grids of the QrCode constructor.
+//Instances of this class are immutable and thread-safe.
+final class QrLayout {
+	
+	//Returns the layout of the given version, building it on first use.
+	static QrLayout get(int ver) {
+		if (ver < QrCode.MIN_VERSION || ver > QrCode.MAX_VERSION)
+			throw new IllegalArgumentException("Version value out of range");
+		QrLayout result = layouts.get(ver);
+		if (result == null) {
+			result = new QrLayout(ver);
+			layouts.set(ver, result);  //Racing threads build identical layouts
+		}
+		return result;
+	}
+	
+	
+	//The version number, width in modules, and bytes per packed row
+	final int version;
+	final int size;
+	final int rowStride;
+	
+	//The dark function modules, with the format bits of mask 0 at error correction level LOW
+	private final byte[] functionModules;
+	
+	//maskPatterns[m] has a 1 at every non-function module that mask m inverts
+	private final byte[][] maskPatterns;
+	
+	//Bit offset (y * rowStride * 8 + x) of bit 7 - j of codeword i at index i * 8 + j; remainder bits are excluded
+	private final int[] codewordBitOffsets;
+	
+	//Bit offsets of the two copies of format bit i at i and 15 + i, then the always dark module
+	private final int[] formatBitOffsets;
+	
+	
+	private QrLayout(int ver) {
+		version = ver;
+		size = ver * 4 + 17;
+		rowStride = (size + 7) >>> 3;
+		int rowBits = rowStride * 8;
+		byte[][] patterns = QrCode.getFunctionPatterns(ver);
+		functionModules = patterns[0];
+		byte[] isFunction = patterns[1];
+		
+		maskPatterns = new byte[8][size * rowStride];
+		for (int msk = 0; msk < 8; msk++) {
+			byte[] pattern = maskPatterns[msk];
+			for (int y = 0; y < size; y++) {
+				for (int x = 0; x < size; x++) {
+					int i = y * rowStride + (x >>> 3);
+					int bit = 0x80 >>> (x & 7);
+					if (QrCode.getMaskBit(msk, x, y) && (isFunction[i] & bit) == 0)
+						pattern[i] |= bit;
+				}
+			}
+		}
+		
+		int[] order = QrCode.getDataModuleOrder(ver);
+		codewordBitOffsets = new int[order.length];
+		for (int i = 0; i < order.length; i++)
+			codewordBitOffsets[i] = order[i] / size * rowBits + order[i] % size;
+		
+		//Same module order as QrCode.drawFormatBits()
+		formatBitOffsets = new int[31];
+		for (int i = 0; i <= 5; i++)
+			formatBitOffsets[i] = i * rowBits + 8;
+		formatBitOffsets[6] = 7 * rowBits + 8;
+		formatBitOffsets[7] = 8 * rowBits + 8;
+		formatBitOffsets[8] = 8 * rowBits + 7;
+		for (int i = 9; i < 15; i++)
+			formatBitOffsets[i] = 8 * rowBits + 14 - i;
+		for (int i = 0; i < 8; i++)
+			formatBitOffsets[15 + i] = 8 * rowBits + size - 1 - i;
+		for (int i = 8; i < 15; i++)
+			formatBitOffsets[15 + i] = (size - 15 + i) * rowBits + 8;
+		formatBitOffsets[30] = (size - 8) * rowBits + 8;
+	}
+	
+	
+	//Returns a new packed grid with the function patterns drawn and every data module light.
+	byte[] newGrid() {
+		return functionModules.clone();
+	}
+	
+	
+	//Returns the number of codewords (data and error correction) that fill the data area of this version.
+	int getNumCodewords() {
+		return codewordBitOffsets.length / 8;
+	}
+	
+	
+	//Draws the given codeword (0 to 255) at the given index of the interleaved codeword sequence
+	//into a grid whose data modules at that index are still light.
+	void drawCodeword(byte[] grid, int index, int value) {
+		for (int j = 0, k = index * 8; j < 8; j++, k++) {
+			if (((value >>> (7 - j)) & 1) != 0) {
+				int off = codewordBitOffsets[k];
+				grid[off >>> 3] |= 0x80 >>> (off & 7);
+			}
+		}
+	}
+	
+	
+	//Returns the codeword at the given index of the interleaved sequence, read from an unmasked grid.
+	int readCodeword(byte[] grid, int index) {
+		int result = 0;
+		for (int j = 0, k = index * 8; j < 8; j++, k++) {
+			int off = codewordBitOffsets[k];
+			result = result << 1 | (grid[off >>> 3] >>> (7 - (off & 7))) & 1;
+		}
+		return result;
+	}
+	
+	
+	//XORs the data modules of the grid with the given mask pattern; applying it twice undoes it.
+	void applyMask(byte[] grid, int msk) {
+		byte[] pattern = maskPatterns[msk];
+		for (int i = 0; i < grid.length; i++)
+			grid[i] ^= pattern[i];
+	}
+	
+	
+	//Draws both copies of the format bits for the given error correction level and mask.
+	void drawFormatBits(byte[] grid, QrCode.Ecc ecl, int msk) {
+		int bits = QrCode.getFormatBits(ecl, msk);
+		for (int i = 0; i < 31; i++) {
+			int off = formatBitOffsets[i];
+			int bit = 0x80 >>> (off & 7);
+			if (i == 30 || ((bits >>> (i % 15)) & 1) != 0)
+				grid[off >>> 3] |= bit;
+			else
+				grid[off >>> 3] &= ~bit;
+		}
+	}
+	
+	
+	//Returns the penalty score of the given grid, equal to that of QrCode.getPenaltyScore() on the same modules.
+	//runHistory is a scratch array of at least 7 elements.
+	int getPenaltyScore(byte[] grid, int[] runHistory) {
+		int result = 0;
+		
+		//Adjacent modules in row having same color, and finder-like patterns
+		for (int y = 0; y < size; y++) {
+			boolean runColor = false;
+			int runX = 0;
+			Arrays.fill(runHistory, 0, 7, 0);
+			for (int x = 0; x < size; x++) {
+				boolean color = getBit(grid, x, y);
+				if (color == runColor) {
+					runX++;
+					if (runX == 5)
+						result += QrCode.PENALTY_N1;
+					else if (runX > 5)
+						result++;
+				} else {
+					QrCode.finderPenaltyAddHistory(runX, runHistory, size);
+					if (!runColor)
+						result += QrCode.finderPenaltyCountPatterns(runHistory, size) * QrCode.PENALTY_N3;
+					runColor = color;
+					runX = 1;
+				}
+			}
+			result += QrCode.finderPenaltyTerminateAndCount(runColor, runX, runHistory, size) * QrCode.PENALTY_N3;
+		}
+		//Adjacent modules in column having same color, and finder-like patterns
+		for (int x = 0; x < size; x++) {
+			boolean runColor = false;
+			int runY = 0;
+			Arrays.fill(runHistory, 0, 7, 0);
+			for (int y = 0; y < size; y++) {
+				boolean color = getBit(grid, x, y);
+				if (color == runColor) {
+					runY++;
+					if (runY == 5)
+						result += QrCode.PENALTY_N1;
+					else if (runY > 5)
+						result++;
+				} else {
+					QrCode.finderPenaltyAddHistory(runY, runHistory, size);
+					if (!runColor)
+						result += QrCode.finderPenaltyCountPatterns(runHistory, size) * QrCode.PENALTY_N3;
+					runColor = color;
+					runY = 1;
+				}
+			}
+			result += QrCode.finderPenaltyTerminateAndCount(runColor, runY, runHistory, size) * QrCode.PENALTY_N3;
+		}
+		
+		//2*2 blocks of modules having same color: a bit of (row XOR next row) OR (the same shifted by one module)
+		//is 0 where the 2*2 block starting there is uniform
+		for (int y = 0; y < size - 1; y++) {
+			int top = y * rowStride, bottom = top + rowStride;
+			for (int i = 0; i < rowStride; i++) {
+				int a = (grid[top + i] & 0xFF) << 1 | (i + 1 < rowStride ? (grid[top + i + 1] & 0xFF) >>> 7 : 0);
+				int b = (grid[bottom + i] & 0xFF) << 1 | (i + 1 < rowStride ? (grid[bottom + i + 1] & 0xFF) >>> 7 : 0);
+				int diff = a ^ b;
+				diff = (diff | diff >>> 1 | (a ^ a >>> 1)) & 0xFF;  //Bit 7 - j is 0 iff the block at x = i * 8 + j is uniform
+				int valid = i * 8 + 8 <= size - 1 ? 0xFF : 0xFF00 >>> (size - 1 - i * 8) & 0xFF;  //Blocks with x < size - 1
+				result += Integer.bitCount(~diff & valid) * QrCode.PENALTY_N2;
+			}
+		}
+		
+		//Balance of dark and light modules
+		int dark = 0;
+		for (byte b : grid)
+			dark += Integer.bitCount(b & 0xFF);
+		int total = size * size;  //Note that size is odd, so dark/total != 1/2
+		//Compute the smallest integer k >= 0 such that (45-5k)% <= dark/total <= (55+5k)%
+		int k = (Math.abs(dark * 20 - total * 10) + total - 1) / total - 1;
+		assert 0 <= k && k <= 9;
+		result += k * QrCode.PENALTY_N4;
+		return result;
+	}
+	
+	
+	private boolean getBit(byte[] grid, int x, int y) {
+		return ((grid[y * rowStride + (x >>> 3)] >>> (7 - (x & 7))) & 1) != 0;
+	}
+	
+	
+	//Lazily filled cache for get(), indexed by version.
+	private static final AtomicReferenceArray<QrLayout> layouts = new AtomicReferenceArray<>(QrCode.MAX_VERSION + 1);
+	
+}
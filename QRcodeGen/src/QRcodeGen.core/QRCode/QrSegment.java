@@ -1,4 +1,5 @@
 package QRCode;
+import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
@@ -20,16 +21,92 @@ public final class QrSegment {
 	//Returns a segment representing the specified string of decimal digits encoded in numeric code.
 	public static QrSegment makeNumeric(CharSequence digits) {
 		Objects.requireNonNull(digits);
-		if (!isNumeric(digits))
-			throw new IllegalArgumentException("String contains non-numeric characters");
+		return makeNumeric(digits, 0, digits.length());
+	}
+	
+	//Returns a segment representing the specified non-negative number in numeric mode, in as few digits as possible.
+	public static QrSegment makeNumeric(long value) {
+		return makeNumeric(value, 0);
+	}
+	
+	//Returns a segment representing the specified non-negative number in numeric mode, padded on the left with
+	//zeros to at least minDigits digits (like "%0Nd"). The digit groups are computed arithmetically, without a string.
+	public static QrSegment makeNumeric(long value, int minDigits) {
+		if (value < 0 || minDigits < 0)
+			throw new IllegalArgumentException("Invalid value");
+		int n = Math.max(numDigits(value), minDigits);
+		BitBuffer bb = new BitBuffer();
+		for (int i = 0; i < n; ) {  //Consume up to 3 digits per iteration
+			int len = Math.min(n - i, 3);
+			int shift = n - i - len;  //Number of digits to the right of this group
+			long rest = shift < POW10.length ? value / POW10[shift] : 0;
+			bb.appendBits((int)(rest % POW10[len]), len * 3 + 1);
+			i += len;
+		}
+		return new QrSegment(Mode.NUMERIC, n, bb);
+	}
+	
+	//Returns a segment representing the specified non-negative number in numeric mode, in as few digits as possible.
+	public static QrSegment makeNumeric(BigInteger value) {
+		return makeNumeric(value, 0);
+	}
+	
+	//Returns a segment representing the specified non-negative number in numeric mode, padded on the left with
+	//zeros to at least minDigits digits. The number is split into base 10^18 limbs, so no decimal string is made.
+	public static QrSegment makeNumeric(BigInteger value, int minDigits) {
+		Objects.requireNonNull(value);
+		if (value.signum() < 0 || minDigits < 0)
+			throw new IllegalArgumentException("Invalid value");
+		if (value.bitLength() < 63)
+			return makeNumeric(value.longValue(), minDigits);
 		
+		long[] limbs = new long[value.bitLength() / 59 + 2];  //Least significant first; 10^18 > 2^59
+		int numLimbs = 0;
+		for (BigInteger rest = value; rest.signum() != 0; numLimbs++) {
+			BigInteger[] qr = rest.divideAndRemainder(LIMB_BASE);
+			limbs[numLimbs] = qr[1].longValue();
+			rest = qr[0];
+		}
+		int n = Math.max((numLimbs - 1) * 18 + numDigits(limbs[numLimbs - 1]), minDigits);
 		BitBuffer bb = new BitBuffer();
-		for (int i = 0; i < digits.length(); ) {  //Consume up to 3 digits per iteration
-			int n = Math.min(digits.length() - i, 3);
-			bb.appendBits(Integer.parseInt(digits.subSequence(i, i + n).toString()), n * 3 + 1);
-			i += n;
+		for (int i = 0; i < n; ) {  //Consume up to 3 digits per iteration
+			int len = Math.min(n - i, 3);
+			int val = 0;
+			for (int j = 0; j < len; j++, i++) {
+				int pos = n - 1 - i;  //Digit position counted from the right
+				int digit = pos / 18 < numLimbs ? (int)(limbs[pos / 18] / POW10[pos % 18] % 10) : 0;
+				val = val * 10 + digit;
+			}
+			bb.appendBits(val, len * 3 + 1);
 		}
-		return new QrSegment(Mode.NUMERIC, digits.length(), bb);
+		return new QrSegment(Mode.NUMERIC, n, bb);
+	}
+	
+	//Returns a segment representing the specified decimal digits in numeric mode, where each
+	//element is a digit value from 0 to 9 (not an ASCII character), most significant first.
+	public static QrSegment makeNumeric(byte[] digits) {
+		Objects.requireNonNull(digits);
+		BitBuffer bb = new BitBuffer();
+		for (int i = 0; i < digits.length; ) {  //Consume up to 3 digits per iteration
+			int len = Math.min(digits.length - i, 3);
+			int val = 0;
+			for (int j = 0; j < len; j++, i++) {
+				int d = digits[i];
+				if (d < 0 || d > 9)
+					throw new IllegalArgumentException("Array contains non-digit values");
+				val = val * 10 + d;
+			}
+			bb.appendBits(val, len * 3 + 1);
+		}
+		return new QrSegment(Mode.NUMERIC, digits.length, bb);
+	}
+	
+	//Returns the number of decimal digits of the given non-negative value, at least 1.
+	private static int numDigits(long value) {
+		int n = 1;
+		while (n < POW10.length && value >= POW10[n])
+			n++;
+		return n;
 	}
 	
 	//Returns a segment representing the specified text string encoded in alphanumeric code.
@@ -50,6 +127,41 @@ public final class QrSegment {
 		return new QrSegment(Mode.ALPHANUMERIC, text.length(), bb);
 	}
 	
+	//Returns a segment of the digits text[start : end] in numeric mode, read directly from the text without copying it.
+	static QrSegment makeNumeric(CharSequence text, int start, int end) {
+		BitBuffer bb = new BitBuffer();
+		for (int i = start; i < end; ) {  //Consume up to 3 digits per iteration
+			int n = Math.min(end - i, 3);
+			int val = 0;
+			for (int j = 0; j < n; j++, i++) {
+				char c = text.charAt(i);
+				if (c < '0' || c > '9')
+					throw new IllegalArgumentException("String contains non-numeric characters");
+				val = val * 10 + (c - '0');
+			}
+			bb.appendBits(val, n * 3 + 1);
+		}
+		return new QrSegment(Mode.NUMERIC, end - start, bb);
+	}
+	
+	//Returns a segment of text[start : end] in alphanumeric mode, read directly from the text without copying it.
+	static QrSegment makeAlphanumeric(CharSequence text, int start, int end) {
+		BitBuffer bb = new BitBuffer();
+		int i;
+		for (i = start; i <= end - 2; i += 2)  //Process groups of 2
+			bb.appendBits(alphanumericIndex(text.charAt(i)) * 45 + alphanumericIndex(text.charAt(i + 1)), 11);
+		if (i < end)  //1 character remaining
+			bb.appendBits(alphanumericIndex(text.charAt(i)), 6);
+		return new QrSegment(Mode.ALPHANUMERIC, end - start, bb);
+	}
+	
+	private static int alphanumericIndex(char c) {
+		int result = ALPHANUMERIC_CHARSET.indexOf(c);
+		if (result == -1)
+			throw new IllegalArgumentException("String contains unencodable characters in alphanumeric mode");
+		return result;
+	}
+	
 	//Returns a list of zero or more segments to represent the specified Unicode text string.
 	//The result may use various segment modes and switch modes to optimize the length of the bit stream.
 	public static List<QrSegment> makeSegments(CharSequence text) {
@@ -147,6 +259,16 @@ public final class QrSegment {
 		return (int)result;
 	}
 	
+	//Powers of 10 from 10^0 to 10^18, the largest that fits in a long.
+	private static final long[] POW10 = new long[19];
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++)
+			POW10[i] = POW10[i - 1] * 10;
+	}
+	
+	private static final BigInteger LIMB_BASE = BigInteger.valueOf(POW10[18]);
+	
 	//Describes precisely all strings that are encodable in numeric mode.
 	private static final Pattern NUMERIC_REGEX = Pattern.compile("[0-9]*");
 	
@@ -164,7 +286,7 @@ public final class QrSegment {
 		BYTE        (0x4,  8, 16, 16),
 		KANJI       (0x8,  8, 10, 12),
 		ECI         (0x7,  0,  0,  0);
-
+		
 		//The mode indicator bits, which is a uint4 value (range 0 to 15).
 		final int modeBits;
 		
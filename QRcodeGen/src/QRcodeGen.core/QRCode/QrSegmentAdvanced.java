@@ -1,4 +1,12 @@
 package QRCode;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -15,18 +23,36 @@ public final class QrSegmentAdvanced {
 	//The resulting list optimally minimizes the total encoded bit length, subjected to the constraints
 	//in the specified {error correction level, minimum version number, maximum version number}.
 	public static List<QrSegment> makeSegmentsOptimally(CharSequence text, QrCode.Ecc ecl, int minVersion, int maxVersion) {
+		return makeSegmentsOptimally(text, ecl, minVersion, maxVersion, false);
+	}
+	
+	
+	//Returns a list of zero or more segments to represent the specified Unicode text string, like the function above.
+	//If allowEci is true, byte mode data may also be encoded in a single-byte or Shift JIS charset announced by an
+	//ECI segment (e.g. ISO-8859-1 or windows-1251), whenever that is shorter including the ECI segments. Without
+	//an ECI, byte mode data is UTF-8 as usual. Not every reader supports ECI, so this is opt-in.
+	public static List<QrSegment> makeSegmentsOptimally(CharSequence text, QrCode.Ecc ecl, int minVersion, int maxVersion, boolean allowEci) {
 		//Check arguments
 		Objects.requireNonNull(text);
 		Objects.requireNonNull(ecl);
 		if (!(QrCode.MIN_VERSION <= minVersion && minVersion <= maxVersion && maxVersion <= QrCode.MAX_VERSION))
 			throw new IllegalArgumentException("Invalid value");
 		
+		//Validate the text, and choose the byte mode charsets worth considering
+		int numCodePoints = countCodePoints(text);
+		List<EciCharset> charsets = new ArrayList<>();
+		charsets.add(ECI_CHARSETS[0]);
+		for (int i = 1; i < ECI_CHARSETS.length && allowEci; i++) {
+			if (ECI_CHARSETS[i].isShorterSomewhere(text))
+				charsets.add(ECI_CHARSETS[i]);
+		}
+		EciCharset[] css = charsets.toArray(new EciCharset[0]);
+		
 		//Iterate through version numbers, and make tentative segments
 		List<QrSegment> segs = null;
-		int[] codePoints = toCodePoints(text);
 		for (int version = minVersion; ; version++) {
 			if (version == minVersion || version == 10 || version == 27)
-				segs = makeSegmentsOptimally(codePoints, version);
+				segs = makeSegmentsOptimally(text, numCodePoints, css, version);
 			assert segs != null;
 			
 			//Check if the segments fits
@@ -44,23 +70,50 @@ public final class QrSegmentAdvanced {
 	}
 	
 	
+	//Returns a list of zero or more segments to represent the text read from the specified reader, like
+	//the function above. The optimal split depends on the whole text, so it is buffered as it is read,
+	//but no more of it than can fit in a QR Code; longer input throws DataTooLongException.
+	//The reader is read to the end (or until the text is found to be too long) and not closed.
+	public static List<QrSegment> makeSegmentsOptimally(Reader in, QrCode.Ecc ecl, int minVersion, int maxVersion, boolean allowEci) throws IOException {
+		Objects.requireNonNull(in);
+		CharBuffer buf = CharBuffer.allocate(1024);
+		while (in.read(buf) != -1) {
+			if (!buf.hasRemaining()) {
+				if (buf.capacity() >= MAX_CHARS)
+					throw new DataTooLongException("String too long");
+				buf = CharBuffer.allocate(Math.min(buf.capacity() * 2, MAX_CHARS)).put(buf.flip());
+			}
+		}
+		return makeSegmentsOptimally(buf.flip(), ecl, minVersion, maxVersion, allowEci);
+	}
+	
+	
+	//Most chars a Reader may supply: a QR Code holds at most 7089 code points, each at most 2 chars.
+	private static final int MAX_CHARS = 7089 * 2;
+	
+	
 	//Returns a new list of segments that is optimal for the given text at the given version number.
-	private static List<QrSegment> makeSegmentsOptimally(int[] codePoints, int version) {
-		if (codePoints.length == 0)
+	private static List<QrSegment> makeSegmentsOptimally(CharSequence text, int numCodePoints, EciCharset[] charsets, int version) {
+		if (numCodePoints == 0)
 			return new ArrayList<>();
-		Mode[] charModes = computeCharacterModes(codePoints, version);
-		return splitIntoSegments(codePoints, charModes);
+		byte[] charStates = computeCharacterModes(text, numCodePoints, charsets, version);
+		return splitIntoSegments(text, charStates, charsets);
 	}
 	
 	
-	//Returns a new array representing the optimal mode per code point based on the given text and version.
-	private static Mode[] computeCharacterModes(int[] codePoints, int version) {
-		if (codePoints.length == 0)
+	//Returns a new array representing the optimal state per code point based on the given text and version.
+	//A state is modeIndex * charsets.length + charsetIndex, where the charset is the one that byte mode
+	//data is currently interpreted in (set by the last ECI segment, or charsets[0] if there was none).
+	//The text is read once, one code point at a time, and must contain numCodePoints of them.
+	private static byte[] computeCharacterModes(CharSequence text, int numCodePoints, EciCharset[] charsets, int version) {
+		if (numCodePoints == 0)
 			throw new IllegalArgumentException();
-		if (codePoints.length > 7089)  //Upper bound is the number of characters that fit in QR Code version 40, low error correction, numeric mode
+		if (numCodePoints > 7089)  //Upper bound is the number of characters that fit in QR Code version 40, low error correction, numeric mode
 			throw new DataTooLongException("String too long");
 		final Mode[] modeTypes = {Mode.BYTE, Mode.ALPHANUMERIC, Mode.NUMERIC, Mode.KANJI};  // Do not modify
 		final int numModes = modeTypes.length;
+		final int numCharsets = charsets.length;
+		final int numStates = numModes * numCharsets;
 		
 		//Segment header sizes, measured in 1/6 bits
 		final int[] headCosts = new int[numModes];
@@ -69,118 +122,156 @@ public final class QrSegmentAdvanced {
 			assert 0 <= headCosts[i] && headCosts[i] <= (4 + 16) * 6;
 		}
 		
-		//charModes[i][j] represents the mode to encode the code point at
-		//index i such that the final segment ends in modeTypes[j] and the
-		//total number of bits is minimized over all possible choices
-		Mode[][] charModes = new Mode[codePoints.length][numModes];
+		//Sizes of the ECI segments that switch to each charset, measured in 1/6 bits
+		final int[] eciCosts = new int[numCharsets];
+		for (int i = 0; i < numCharsets; i++) {
+			eciCosts[i] = (4 + QrSegment.makeEci(charsets[i].eciValue).data.bitLength()) * 6;
+			assert eciCosts[i] == (4 + 8) * 6;
+		}
+		
+		//charStates[i][j] represents the state to encode the code point at
+		//index i such that the final segment ends in state j and the
+		//total number of bits is minimized over all possible choices (-1 if impossible)
+		byte[][] charStates = new byte[numCodePoints][numStates];
 		
 		//At the beginning of each iteration of the loop below,
 		//prevCosts[j] is the exact minimum number of 1/6 bits needed to
-		//encode the entire string prefix of length i, and end in modeTypes[j]
-		int[] prevCosts = headCosts.clone();
+		//encode the entire string prefix of length i, and end in state j.
+		//Initially, only byte mode can switch charsets (with an ECI segment first).
+		int[] prevCosts = new int[numStates];
+		for (int j = 0; j < numStates; j++) {
+			int mode = j / numCharsets;
+			int cs = j % numCharsets;
+			prevCosts[j] = cs == 0 ? headCosts[mode] : mode == 0 ? eciCosts[cs] + headCosts[0] : -1;
+		}
 		
 		//Calculate costs using dynamic programming
-		for (int i = 0; i < codePoints.length; i++) {
-			int c = codePoints[i];
-			int[] curCosts = new int[numModes];
-			{  //Always extend a byte mode segment
-				curCosts[0] = prevCosts[0] + countUtf8Bytes(c) * 8 * 6;
-				charModes[i][0] = modeTypes[0];
-			}
-			//Extend a segment if possible
-			if (QrSegment.ALPHANUMERIC_CHARSET.indexOf(c) != -1) {  //Is alphanumeric
-				curCosts[1] = prevCosts[1] + 33; 
-				charModes[i][1] = modeTypes[1];
-			}
-			if ('0' <= c && c <= '9') {  //Is numeric
-				curCosts[2] = prevCosts[2] + 20;
-				charModes[i][2] = modeTypes[2];
-			}
-			if (isKanji(c)) {
-				curCosts[3] = prevCosts[3] + 78;
-				charModes[i][3] = modeTypes[3];
+		for (int i = 0, pos = 0; i < numCodePoints; i++) {
+			int c = Character.codePointAt(text, pos);
+			pos += Character.charCount(c);
+			int[] curCosts = new int[numStates];
+			byte[] states = charStates[i];
+			Arrays.fill(states, (byte)-1);
+			boolean isAlphanumeric = QrSegment.ALPHANUMERIC_CHARSET.indexOf(c) != -1;
+			boolean isNumeric = '0' <= c && c <= '9';
+			boolean isKanji = isKanji(c);
+			
+			//Extend a segment if possible (a byte mode segment if the charset can encode the code point)
+			for (int j = 0; j < numStates; j++) {
+				if (prevCosts[j] == -1)
+					continue;
+				int mode = j / numCharsets;
+				int cost;
+				if (mode == 0)
+					cost = charsets[j % numCharsets].length(c) * 8 * 6;
+				else if (mode == 1)
+					cost = isAlphanumeric ? 33 : 0;
+				else if (mode == 2)
+					cost = isNumeric ? 20 : 0;
+				else
+					cost = isKanji ? 78 : 0;
+				if (cost > 0) {
+					curCosts[j] = prevCosts[j] + cost;
+					states[j] = (byte)j;
+				}
 			}
 			
-			//Start new segment at the end to switch modes
-			for (int j = 0; j < numModes; j++) {  //To mode
-				for (int k = 0; k < numModes; k++) {  //From mode
-					int newCost = (curCosts[k] + 5) / 6 * 6 + headCosts[j];
-					if (charModes[i][k] != null && (charModes[i][j] == null || newCost < curCosts[j])) {
+			//Start new segment at the end to switch modes. Byte mode may also switch charsets,
+			//with an ECI segment; other modes keep the charset for the next byte mode segment.
+			for (int j = 0; j < numStates; j++) {  //To state
+				int toMode = j / numCharsets;
+				int toCharset = j % numCharsets;
+				for (int k = 0; k < numStates; k++) {  //From state
+					if (states[k] == -1)
+						continue;
+					int newCost = (curCosts[k] + 5) / 6 * 6 + headCosts[toMode];
+					if (k % numCharsets != toCharset) {
+						if (toMode != 0)
+							continue;
+						newCost += eciCosts[toCharset];
+					}
+					if (states[j] == -1 || newCost < curCosts[j]) {
 						curCosts[j] = newCost;
-						charModes[i][j] = modeTypes[k];
+						states[j] = (byte)k;
 					}
 				}
 			}
 			
-			//A non-tight upper bound is when each of 7089 characters switches to
-			//byte mode (4-bit header + 16-bit count) and requires 4 bytes in UTF-8
+			//A non-tight upper bound is when each of 7089 characters switches to byte mode
+			//(4-bit header + 16-bit count) after an ECI segment (12 bits) and requires 4 bytes in UTF-8
 			for (int cost : curCosts)
-				assert 0 <= cost && cost <= (4 + 16 + 32) * 6 * 7089;
+				assert 0 <= cost && cost <= (12 + 4 + 16 + 32) * 6 * 7089;
 			prevCosts = curCosts;
 		}
 		
-		//Find optimal ending mode
-		Mode curMode = null;
-		for (int i = 0, minCost = 0; i < numModes; i++) {
-			if (curMode == null || prevCosts[i] < minCost) {
+		//Find optimal ending state
+		int curState = -1;
+		for (int i = 0, minCost = 0; i < numStates; i++) {
+			if (curState == -1 || prevCosts[i] < minCost) {
 				minCost = prevCosts[i];
-				curMode = modeTypes[i];
+				curState = i;
 			}
 		}
 		
-		//Get optimal mode for each code point by tracing backwards
-		Mode[] result = new Mode[charModes.length];
+		//Get optimal state for each code point by tracing backwards
+		byte[] result = new byte[charStates.length];
 		for (int i = result.length - 1; i >= 0; i--) {
-			for (int j = 0; j < numModes; j++) {
-				if (modeTypes[j] == curMode) {
-					curMode = charModes[i][j];
-					result[i] = curMode;
-					break;
-				}
-			}
+			curState = charStates[i][curState];
+			result[i] = (byte)curState;
 		}
 		return result;
 	}
 	
 	
-	//Returns a new list of segments based on the given text and modes, such that
-	//consecutive code points in the same mode are put into the same segment.
-	private static List<QrSegment> splitIntoSegments(int[] codePoints, Mode[] charModes) {
-		if (codePoints.length == 0)
+	//Returns a new list of segments based on the given text and states, such that consecutive code points
+	//in the same state are put into the same segment, with an ECI segment wherever byte mode changes charset.
+	//Each segment's bits are encoded directly from the text, in one pass.
+	private static List<QrSegment> splitIntoSegments(CharSequence text, byte[] charStates, EciCharset[] charsets) {
+		if (charStates.length == 0)
 			throw new IllegalArgumentException();
 		List<QrSegment> result = new ArrayList<>();
+		int curCharset = 0;  //Charset of byte mode data so far
 		
-		//Accumulate run of modes
-		Mode curMode = charModes[0];
-		int start = 0;
-		for (int i = 1; ; i++) {
-			if (i < codePoints.length && charModes[i] == curMode)
-				continue;
-			String s = new String(codePoints, start, i - start);
-			if (curMode == Mode.BYTE)
-				result.add(QrSegment.makeBytes(s.getBytes(StandardCharsets.UTF_8)));
-			else if (curMode == Mode.NUMERIC)
-				result.add(QrSegment.makeNumeric(s));
-			else if (curMode == Mode.ALPHANUMERIC)
-				result.add(QrSegment.makeAlphanumeric(s));
-			else if (curMode == Mode.KANJI)
-				result.add(makeKanji(s));
+		//Accumulate run of states
+		for (int i = 0, pos = 0; i < charStates.length; ) {
+			int state = charStates[i];
+			int start = pos;  //Index in text of the first char of the run
+			do {
+				pos += Character.charCount(Character.codePointAt(text, pos));
+				i++;
+			} while (i < charStates.length && charStates[i] == state);
+			
+			int mode = state / charsets.length;
+			if (mode == 0) {
+				int cs = state % charsets.length;
+				if (cs != curCharset) {
+					result.add(QrSegment.makeEci(charsets[cs].eciValue));
+					curCharset = cs;
+				}
+				result.add(charsets[cs].makeBytes(text, start, pos));
+			} else if (mode == 1)
+				result.add(QrSegment.makeAlphanumeric(text, start, pos));
+			else if (mode == 2)
+				result.add(QrSegment.makeNumeric(text, start, pos));
+			else if (mode == 3)
+				result.add(makeKanji(text, start, pos));
 			else
 				throw new AssertionError();
-			if (i >= codePoints.length)
-				return result;
-			curMode = charModes[i];
-			start = i;
 		}
+		return result;
 	}
 	
 	
-	//Returns a new array of Unicode code points (effectively
-	//UTF-32 / UCS-4) representing the given UTF-16 string.
-	private static int[] toCodePoints(CharSequence s) {
-		int[] result = s.codePoints().toArray();
-		for (int c : result) {
-			if (Character.isSurrogate((char)c))
+	//Returns the number of code points in the given string, in one pass.
+	//Throws IllegalArgumentException if it contains an unpaired surrogate.
+	private static int countCodePoints(CharSequence s) {
+		int result = 0;
+		for (int i = 0, n = s.length(); i < n; result++) {
+			char c = s.charAt(i);
+			i++;
+			if (Character.isHighSurrogate(c) && i < n && Character.isLowSurrogate(s.charAt(i)))
+				i++;
+			else if (Character.isSurrogate(c))
 				throw new IllegalArgumentException("Invalid UTF-16 string");
 		}
 		return result;
@@ -212,6 +303,18 @@ public final class QrSegmentAdvanced {
 		return new QrSegment(Mode.KANJI, text.length(), bb);
 	}
 	
+	//Returns a segment representing text[start : end] encoded in kanji mode.
+	private static QrSegment makeKanji(CharSequence text, int start, int end) {
+		BitBuffer bb = new BitBuffer();
+		for (int i = start; i < end; i++) {
+			int val = UNICODE_TO_QR_KANJI[text.charAt(i)];
+			if (val == -1)
+				throw new IllegalArgumentException("String contains non-kanji-mode characters");
+			bb.appendBits(val, 13);
+		}
+		return new QrSegment(Mode.KANJI, end - start, bb);
+	}
+	
 	//Tests whether the specified string can be encoded as a segment in kanji mode.
 	public static boolean isEncodableAsKanji(CharSequence text) {
 		Objects.requireNonNull(text);
@@ -353,6 +456,117 @@ public final class QrSegmentAdvanced {
 		}
 	}
 	
+	//A byte mode charset with its ECI assignment value.
+	private static final class EciCharset {
+		final Charset charset;
+		final int eciValue;
+		private final boolean isUtf8;
+		private volatile byte[] bmpLengths;  //Lazily computed, see length()
+		
+		EciCharset(Charset charset, int eciValue) {
+			this.charset = charset;
+			this.eciValue = eciValue;
+			isUtf8 = charset.equals(StandardCharsets.UTF_8);
+		}
+		
+		//Returns the number of bytes of the given code point in this charset, or 0 if it cannot be encoded.
+		//Apart from UTF-8, the supported charsets only encode characters of the Basic Multilingual Plane.
+		int length(int cp) {
+			if (isUtf8)
+				return countUtf8Bytes(cp);
+			if (cp > 0xFFFF)
+				return 0;
+			byte[] lengths = bmpLengths;
+			if (lengths == null) {
+				lengths = computeBmpLengths();
+				bmpLengths = lengths;  //Benign race: every thread computes the same contents
+			}
+			return lengths[cp];
+		}
+		
+		//Tests whether this charset encodes some code point of the given valid string in fewer bytes than UTF-8.
+		boolean isShorterSomewhere(CharSequence text) {
+			for (int i = 0; i < text.length(); ) {
+				int c = Character.codePointAt(text, i);
+				i += Character.charCount(c);
+				int len = length(c);
+				if (len > 0 && len < countUtf8Bytes(c))
+					return true;
+			}
+			return false;
+		}
+		
+		//Returns a byte mode segment of text[start : end] encoded in this charset.
+		QrSegment makeBytes(CharSequence text, int start, int end) {
+			BitBuffer bb = new BitBuffer();
+			int numBytes = 0;
+			if (isUtf8) {
+				for (int i = start; i < end; ) {
+					int c = Character.codePointAt(text, i);
+					i += Character.charCount(c);
+					int n = countUtf8Bytes(c);
+					if (n == 1)
+						bb.appendBits(c, 8);
+					else {
+						bb.appendBits((0xFF00 >>> n) & 0xFF | c >>> ((n - 1) * 6), 8);  //Lead byte: n one bits, then the top bits
+						for (int k = n - 2; k >= 0; k--)
+							bb.appendBits(0x80 | (c >>> (k * 6)) & 0x3F, 8);
+					}
+					numBytes += n;
+				}
+			} else {
+				ByteBuffer bytes;
+				try {
+					bytes = charset.newEncoder().encode(CharBuffer.wrap(text, start, end));
+				} catch (CharacterCodingException e) {
+					throw new IllegalArgumentException("String contains characters not encodable in " + charset, e);
+				}
+				numBytes = bytes.remaining();
+				while (bytes.hasRemaining())
+					bb.appendBits(bytes.get() & 0xFF, 8);
+			}
+			return new QrSegment(Mode.BYTE, numBytes, bb);
+		}
+		
+		//Returns the length of every BMP code point that this charset encodes and decodes back to itself, else 0.
+		private byte[] computeBmpLengths() {
+			byte[] result = new byte[0x10000];
+			CharsetEncoder enc = charset.newEncoder();
+			CharsetDecoder dec = charset.newDecoder();
+			char[] ch = new char[1];
+			for (int c = 0; c < result.length; c++) {
+				if (Character.isSurrogate((char)c) || !enc.canEncode((char)c))
+					continue;
+				try {
+					ch[0] = (char)c;
+					ByteBuffer bytes = enc.encode(CharBuffer.wrap(ch));
+					int len = bytes.remaining();
+					CharBuffer back = dec.decode(bytes);
+					if (back.length() == 1 && back.get(0) == c)
+						result[c] = (byte)len;
+				} catch (CharacterCodingException e) {}  //Leave as 0
+			}
+			return result;
+		}
+	}
+	
+	
+	//The byte mode charsets in order of preference. The first one is the default (used without an ECI segment);
+	//the others are only considered when they encode some code point in fewer bytes. Charsets missing from the
+	//runtime are skipped.
+	private static final EciCharset[] ECI_CHARSETS;
+	
+	static {
+		String[] names = {"UTF-8", "ISO-8859-1", "ISO-8859-2", "ISO-8859-7", "windows-1251", "Shift_JIS"};
+		int[] eciValues = {26, 3, 4, 9, 22, 20};
+		List<EciCharset> list = new ArrayList<>();
+		for (int i = 0; i < names.length; i++) {
+			if (Charset.isSupported(names[i]))
+				list.add(new EciCharset(Charset.forName(names[i]), eciValues[i]));
+		}
+		ECI_CHARSETS = list.toArray(new EciCharset[0]);
+	}
+	
 	private QrSegmentAdvanced() {}  // Not instantiable
 	
 }
\ No newline at end of file
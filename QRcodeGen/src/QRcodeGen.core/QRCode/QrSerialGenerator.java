@@ -0,0 +1,298 @@
+package QRCode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+//Generates QR Codes for consecutive serial numbers, such as ticket IDs, of the form prefix + fixed-width
+//zero-padded decimal number, all at one version, error correction level and mask.
+//Only the first symbol of a range is encoded normally. Going to the next serial number changes a few
+//data codewords; since the Reed-Solomon remainder is linear over GF(2^8), each changed codeword changes the
+//ECC of its block by (old XOR new) times a precomputed per-position remainder. Masking is XOR as well, so
+//the changed data and ECC bits are flipped directly in a copy of the previous symbol's module grid.
+//Instances of this class are immutable and thread-safe; each range has its own state.
+public final class QrSerialGenerator {
+	
+	//Returns a generator for the text prefix followed by serial numbers zero-padded to the specified
+	//number of digits (1 to 18), at the specified error correction level and version. The mask is 0 to 7,
+	//or -1 to use the automatically chosen mask of the first symbol of each range for the whole range.
+	public static QrSerialGenerator create(CharSequence prefix, int digits, QrCode.Ecc ecl, int version, int mask) {
+		Objects.requireNonNull(prefix);
+		Objects.requireNonNull(ecl);
+		if (digits < 1 || digits > 18)
+			throw new IllegalArgumentException("Digits out of range");
+		if (version < QrCode.MIN_VERSION || version > QrCode.MAX_VERSION)
+			throw new IllegalArgumentException("Version value out of range");
+		if (mask < -1 || mask > 7)
+			throw new IllegalArgumentException("Mask value out of range");
+		List<QrSegment> segs = prefix.length() == 0 ? new ArrayList<>()
+			: QrSegmentAdvanced.makeSegmentsOptimally(prefix, ecl, version, version);
+		return new QrSerialGenerator(segs, digits, ecl, version, mask);
+	}
+	
+	
+	//The version number of every QR Code made by this generator
+	public final int version;
+	
+	//The error correction level of every QR Code made by this generator
+	public final QrCode.Ecc errorCorrectionLevel;
+	
+	//Number of decimal digits of each serial number
+	public final int digits;
+	
+	//Requested mask, or -1
+	private final int mask;
+	
+	//Segments of the prefix text
+	private final List<QrSegment> prefixSegs;
+	
+	//Bit offset of the serial number's digit groups in the data codewords
+	private final int serialBitOffset;
+	
+	//For each data codeword: its index in the interleaved sequence, its block,
+	//and its distance (in codewords) from the end of its block's data
+	private final int[] dataInterleaved;
+	private final int[] dataBlock;
+	private final int[] dataDistance;
+	
+	//eccInterleaved[b][e] is the index of ECC codeword e of block b in the interleaved sequence
+	private final int[][] eccInterleaved;
+	
+	//unitRemainderLogs[q][e] is the discrete logarithm (or -1 for zero) of ECC codeword e
+	//of a block whose data is a single 1 followed by q zero codewords
+	private final int[][] unitRemainderLogs;
+	
+	//Packed grid bit offset (y * rowStride * 8 + x) of each bit of each interleaved codeword, in drawing order
+	private final int[] moduleBitOffsets;
+	
+	
+	private QrSerialGenerator(List<QrSegment> segs, int digits, QrCode.Ecc ecl, int ver, int mask) {
+		version = ver;
+		errorCorrectionLevel = ecl;
+		this.digits = digits;
+		this.mask = mask;
+		prefixSegs = Collections.unmodifiableList(segs);
+		List<QrSegment> all = new ArrayList<>(segs);
+		all.add(QrSegment.makeNumeric(serialText(0)));
+		int totalBits = QrSegment.getTotalBits(all, ver);
+		if (totalBits == -1 || totalBits > QrCode.getNumDataCodewords(ver, ecl) * 8)
+			throw new DataTooLongException("Prefix and serial number do not fit the version");
+		serialBitOffset = totalBits - all.get(all.size() - 1).data.bitLength();
+		
+		//Reproduce the block split and interleaving of QrCode.addEccAndInterleave()
+		int numBlocks = QrCode.getNumBlocks(ver, ecl);
+		int blockEccLen = QrCode.getEccCodewordsPerBlock(ver, ecl);
+		int rawCodewords = QrCode.getNumRawDataModules(ver) / 8;
+		int numShortBlocks = numBlocks - rawCodewords % numBlocks;
+		int shortBlockLen = rawCodewords / numBlocks;
+		int shortDataLen = shortBlockLen - blockEccLen;
+		int[] blockStart = new int[numBlocks];
+		int numData = QrCode.getNumDataCodewords(ver, ecl);
+		dataInterleaved = new int[numData];
+		dataBlock = new int[numData];
+		dataDistance = new int[numData];
+		for (int j = 0, k = 0; j < numBlocks; j++) {
+			int datLen = shortDataLen + (j < numShortBlocks ? 0 : 1);
+			blockStart[j] = k;
+			for (int i = 0; i < datLen; i++, k++) {
+				dataBlock[k] = j;
+				dataDistance[k] = datLen - 1 - i;
+			}
+		}
+		eccInterleaved = new int[numBlocks][blockEccLen];
+		for (int i = 0, k = 0; i <= shortBlockLen; i++) {
+			for (int j = 0; j < numBlocks; j++) {
+				if (i == shortDataLen && j < numShortBlocks)
+					continue;  //Padding byte of a short block
+				int datLen = shortDataLen + (j < numShortBlocks ? 0 : 1);
+				if (i < datLen)
+					dataInterleaved[blockStart[j] + i] = k;
+				else
+					eccInterleaved[j][i - (shortBlockLen + 1 - blockEccLen)] = k;
+				k++;
+			}
+		}
+		
+		//Remainders of unit vectors, by repeatedly dividing in one more zero codeword
+		byte[] rsDiv = QrCode.getReedSolomonDivisor(blockEccLen);
+		byte[] rem = rsDiv.clone();
+		byte[] zero = new byte[1];
+		unitRemainderLogs = new int[shortDataLen + 1][blockEccLen];
+		for (int q = 0; q < unitRemainderLogs.length; q++) {
+			if (q > 0)
+				QrCode.reedSolomonUpdateRemainder(zero, 0, 1, rsDiv, rem);
+			for (int e = 0; e < blockEccLen; e++)
+				unitRemainderLogs[q][e] = rem[e] == 0 ? -1 : GF_LOG[rem[e] & 0xFF];
+		}
+		
+		int size = ver * 4 + 17;
+		int rowBits = ((size + 7) >>> 3) * 8;
+		int[] order = QrCode.getDataModuleOrder(ver);
+		moduleBitOffsets = new int[order.length];
+		for (int i = 0; i < order.length; i++)
+			moduleBitOffsets[i] = order[i] / size * rowBits + order[i] % size;
+	}
+	
+	
+	//Returns the QR Code for the specified serial number, encoded from scratch.
+	public QrCode encode(long serial) {
+		return encode(serial, mask);
+	}
+	
+	
+	private QrCode encode(long serial, int msk) {
+		return new QrCode(version, errorCorrectionLevel, makeDataCodewords(serial), msk);
+	}
+	
+	
+	//Returns a sequential stream of the QR Codes for serial numbers startInclusive to endExclusive - 1, in order.
+	//Apart from the first one, each symbol is derived incrementally from the previous one.
+	public Stream<QrCode> range(long startInclusive, long endExclusive) {
+		checkSerial(startInclusive);
+		if (endExclusive < startInclusive || endExclusive - 1 > maxSerial())
+			throw new IllegalArgumentException("Invalid range");
+		Iterator<QrCode> iter = new Cursor(startInclusive, endExclusive);
+		return StreamSupport.stream(Spliterators.spliterator(iter, endExclusive - startInclusive,
+			Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+	}
+	
+	
+	private byte[] makeDataCodewords(long serial) {
+		checkSerial(serial);
+		List<QrSegment> segs = new ArrayList<>(prefixSegs);
+		segs.add(QrSegment.makeNumeric(serialText(serial)));
+		return QrCode.packDataCodewords(segs, version, errorCorrectionLevel);
+	}
+	
+	
+	private String serialText(long serial) {
+		String s = Long.toString(serial);
+		StringBuilder sb = new StringBuilder(digits);
+		for (int i = s.length(); i < digits; i++)
+			sb.append('0');
+		return sb.append(s).toString();
+	}
+	
+	
+	private long maxSerial() {
+		long result = 1;
+		for (int i = 0; i < digits; i++)
+			result *= 10;
+		return result - 1;
+	}
+	
+	
+	private void checkSerial(long serial) {
+		if (serial < 0 || serial > maxSerial())
+			throw new IllegalArgumentException("Serial number out of range");
+	}
+	
+	
+	//Exponent and logarithm tables of GF(2^8/0x11D) with generator 0x02; GF_EXP is doubled to skip a modulo.
+	private static final int[] GF_EXP = new int[510];
+	private static final int[] GF_LOG = new int[256];
+	static {
+		for (int i = 0, x = 1; i < 255; i++, x = QrCode.reedSolomonMultiply(x, 0x02)) {
+			GF_EXP[i] = GF_EXP[i + 255] = x;
+			GF_LOG[x] = i;
+		}
+	}
+	
+	
+	//Holds the module grid of the most recently produced symbol of a range.
+	private final class Cursor implements Iterator<QrCode> {
+		private long next;
+		private final long end;
+		private int msk;
+		private byte[] grid;  //Null before the first symbol
+		private long prevSerial;
+		
+		
+		Cursor(long start, long end) {
+			next = start;
+			this.end = end;
+		}
+		
+		
+		public boolean hasNext() {
+			return next < end;
+		}
+		
+		
+		public QrCode next() {
+			if (next >= end)
+				throw new NoSuchElementException();
+			long serial = next;
+			next++;
+			if (grid == null) {
+				QrCode first = encode(serial, mask);
+				msk = first.mask;
+				grid = first.getPackedModules().clone();
+			} else
+				advanceTo(serial);
+			prevSerial = serial;
+			return new QrCode(version, errorCorrectionLevel, msk, grid.clone());
+		}
+		
+		
+		//Rewrites the digit groups that differ between prevSerial and serial, and patches the grid for every changed codeword.
+		private void advanceTo(long serial) {
+			long oldVal = prevSerial;
+			long newVal = serial;
+			int groupDigits = digits % 3 == 0 ? 3 : digits % 3;  //The last group may be short
+			int bitEnd = serialBitOffset + digits / 3 * 10 + (digits % 3 == 0 ? 0 : digits % 3 * 3 + 1);
+			for (int remaining = digits; remaining > 0; remaining -= groupDigits, groupDigits = 3) {
+				int div = groupDigits == 3 ? 1000 : groupDigits == 2 ? 100 : 10;
+				int oldGroup = (int)(oldVal % div);
+				int newGroup = (int)(newVal % div);
+				oldVal /= div;
+				newVal /= div;
+				int groupBits = groupDigits * 3 + 1;
+				bitEnd -= groupBits;
+				if (oldGroup == newGroup) {
+					if (oldVal == newVal)
+						break;  //All higher digits are equal too
+					continue;
+				}
+				//Align the changed bits to the codewords they span (at most 3) and apply each codeword's change once
+				long diff = (long)(oldGroup ^ newGroup) << (24 - groupBits - (bitEnd & 7));
+				for (int i = 0; i < 3; i++) {
+					int delta = (int)(diff >>> (16 - i * 8)) & 0xFF;
+					if (delta != 0)
+						applyDelta((bitEnd >>> 3) + i, delta);
+				}
+			}
+		}
+		
+		
+		//XORs delta into the given data codeword, its block's ECC codewords and their modules.
+		private void applyDelta(int index, int delta) {
+			flipCodeword(dataInterleaved[index], delta);
+			int[] unitLog = unitRemainderLogs[dataDistance[index]];
+			int[] eccIndexes = eccInterleaved[dataBlock[index]];
+			int deltaLog = GF_LOG[delta];
+			for (int e = 0; e < unitLog.length; e++) {
+				if (unitLog[e] != -1)
+					flipCodeword(eccIndexes[e], GF_EXP[deltaLog + unitLog[e]]);
+			}
+		}
+		
+		
+		private void flipCodeword(int index, int delta) {
+			for (int j = 0; j < 8; j++) {
+				if (((delta >>> (7 - j)) & 1) != 0) {
+					int off = moduleBitOffsets[index * 8 + j];
+					grid[off >>> 3] ^= 0x80 >>> (off & 7);
+				}
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,335 @@
+package QRCode;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//Encodes QR Codes of versions 1 to MAX_VERSION, whose rows (at most 57 modules) each fit in one long, with every
+//module row held in a word: module x of a row is bit 63 - x, and rows past the symbol are 0. Per-version tables
+//give the function patterns, the eight mask patterns and the word and bit of every codeword bit and format bit,
+//so masking is one XOR per row, runs are found with numberOfLeadingZeros(), columns are scanned as the rows of
+//the transposed symbol, and the 2*2 blocks of two rows are counted with a few shifts and a bitCount(). The results
+//are identical to those of the QrCode constructor, which QrCode.encodeSegments() uses for larger versions.
+//Provides static functions only; not instantiable.
+final class QrSmallEncoder {
+	
+	//The largest version handled by this class.
+	static final int MAX_VERSION = 10;
+	
+	
+	//Returns the QR Code of the given version (at most MAX_VERSION) and error correction level with the given data
+	//codewords, using the given mask or, if it is -1, the one with the lowest penalty score, like the QrCode constructor.
+	static QrCode encode(int ver, QrCode.Ecc ecl, byte[] dataCodewords, int msk) {
+		Tables tables = Tables.get(ver);
+		int size = tables.size;
+		long[] rows = tables.functionRows.clone();
+		drawCodewords(tables, ecl, dataCodewords, rows);
+		
+		if (msk == -1) {  //Choose the mask with the lowest penalty score
+			//Transposing commutes with XOR, so the columns of each masked symbol come from one transpose of the unmasked rows
+			long[] unmaskedColumns = rows.clone();
+			transpose(unmaskedColumns);
+			long[] masked = new long[64];
+			long[] columns = new long[64];
+			int minPenalty = Integer.MAX_VALUE;
+			for (int i = 0; i < 8; i++) {
+				long[] pattern = tables.maskRows[i];
+				long[] columnPattern = tables.maskColumns[i];
+				for (int y = 0; y < size; y++) {
+					masked[y] = rows[y] ^ pattern[y];
+					columns[y] = unmaskedColumns[y] ^ columnPattern[y];
+				}
+				drawFormatBits(tables.formatBits, masked, ecl, i);
+				drawFormatBits(tables.formatColumnBits, columns, ecl, i);
+				int penalty = getPenaltyScore(masked, columns, size);
+				if (penalty < minPenalty) {
+					msk = i;
+					minPenalty = penalty;
+				}
+			}
+		}
+		long[] pattern = tables.maskRows[msk];
+		for (int y = 0; y < size; y++)
+			rows[y] ^= pattern[y];
+		drawFormatBits(tables.formatBits, rows, ecl, msk);
+		
+		//Pack the words into the MSB-first bytes of QrCode.getRowStride()
+		int rowStride = tables.rowStride;
+		byte[] packed = new byte[size * rowStride];
+		for (int y = 0; y < size; y++) {
+			for (int i = 0; i < rowStride; i++)
+				packed[y * rowStride + i] = (byte)(rows[y] >>> (56 - i * 8));
+		}
+		return new QrCode(ver, ecl, msk, packed);
+	}
+	
+	
+	//Computes the ECC of each block and draws the data and ECC codewords into the rows at their positions
+	//in the interleaved sequence (as QrCompactEncoder does), without building the blocks or the sequence.
+	private static void drawCodewords(Tables tables, QrCode.Ecc ecl, byte[] data, long[] rows) {
+		int ver = tables.version;
+		int numBlocks = QrCode.getNumBlocks(ver, ecl);
+		int blockEccLen = QrCode.getEccCodewordsPerBlock(ver, ecl);
+		int rawCodewords = tables.codewordBits.length / 8;
+		int numShortBlocks = numBlocks - rawCodewords % numBlocks;
+		int shortDataLen = rawCodewords / numBlocks - blockEccLen;
+		int numDataCodewords = rawCodewords - blockEccLen * numBlocks;
+		if (data.length != numDataCodewords)
+			throw new IllegalArgumentException("Invalid number of data codewords");
+		
+		byte[] products = getDivisorProducts(blockEccLen);
+		byte[] ecc = new byte[blockEccLen];
+		for (int b = 0, k = 0; b < numBlocks; b++) {
+			int datLen = shortDataLen + (b < numShortBlocks ? 0 : 1);
+			Arrays.fill(ecc, (byte)0);
+			for (int i = 0; i < datLen; i++, k++) {
+				//Data codeword i of block b is at i * numBlocks + b; the extra codeword of long blocks comes after all others
+				int val = data[k] & 0xFF;
+				drawCodeword(tables.codewordBits, rows, i < shortDataLen ? i * numBlocks + b : shortDataLen * numBlocks + b - numShortBlocks, val);
+				
+				//Same polynomial division as QrCode.reedSolomonUpdateRemainder(), with the products looked up
+				int factor = (val ^ ecc[0]) & 0xFF;
+				System.arraycopy(ecc, 1, ecc, 0, blockEccLen - 1);
+				ecc[blockEccLen - 1] = 0;
+				for (int j = 0, off = factor * blockEccLen; j < blockEccLen; j++)
+					ecc[j] ^= products[off + j];
+			}
+			for (int e = 0; e < blockEccLen; e++)
+				drawCodeword(tables.codewordBits, rows, numDataCodewords + e * numBlocks + b, ecc[e] & 0xFF);
+		}
+	}
+	
+	
+	//Returns the products of the Reed-Solomon divisor of the given degree with every factor, coefficient j
+	//times factor f at f * degree + j, from a lazily filled cache. The result is shared and must not be modified.
+	private static byte[] getDivisorProducts(int degree) {
+		byte[] result = divisorProducts.get(degree);
+		if (result == null) {
+			byte[] divisor = QrCode.getReedSolomonDivisor(degree);
+			result = new byte[256 * degree];
+			for (int f = 0; f < 256; f++) {
+				for (int j = 0; j < degree; j++)
+					result[f * degree + j] = (byte)QrCode.reedSolomonMultiply(divisor[j] & 0xFF, f);
+			}
+			divisorProducts.set(degree, result);  //Racing threads compute identical arrays
+		}
+		return result;
+	}
+	
+	
+	//Sets the dark bits of the given codeword (0 to 255) at the given index of the interleaved sequence.
+	private static void drawCodeword(int[] codewordBits, long[] rows, int index, int value) {
+		for (int j = 0, k = index * 8; j < 8; j++, k++) {
+			int pos = codewordBits[k];
+			rows[pos >>> 6] |= (long)((value >>> (7 - j)) & 1) << pos;  //The shift only uses the low 6 bits
+		}
+	}
+	
+	
+	//Draws both copies of the format bits for the given error correction level and mask at the given positions.
+	private static void drawFormatBits(int[] positions, long[] rows, QrCode.Ecc ecl, int msk) {
+		int bits = QrCode.getFormatBits(ecl, msk);
+		for (int i = 0; i < 31; i++) {
+			int pos = positions[i];
+			long bit = 1L << pos;
+			if (i == 30 || ((bits >>> (i % 15)) & 1) != 0)
+				rows[pos >>> 6] |= bit;
+			else
+				rows[pos >>> 6] &= ~bit;
+		}
+	}
+	
+	
+	//Returns the penalty score of the given rows, equal to that of QrCode.getPenaltyScore() on the same modules.
+	//columns holds the same modules transposed.
+	private static int getPenaltyScore(long[] rows, long[] columns, int size) {
+		//Adjacent modules in row or column having same color, and finder-like patterns
+		int result = getLinePenalty(rows, size) + getLinePenalty(columns, size);
+		
+		//2*2 blocks of modules having same color: a bit of (row XOR next row) OR (the same shifted by one module)
+		//is 0 where the 2*2 block starting there is uniform, for the blocks with x < size - 1
+		long valid = -1L << (65 - size);
+		for (int y = 0; y < size - 1; y++) {
+			long a = rows[y];
+			long diff = a ^ rows[y + 1];
+			diff |= diff << 1 | (a ^ a << 1);
+			result += Long.bitCount(~diff & valid) * QrCode.PENALTY_N2;
+		}
+		
+		//Balance of dark and light modules
+		int dark = 0;
+		for (int y = 0; y < size; y++)
+			dark += Long.bitCount(rows[y]);
+		int total = size * size;  //Note that size is odd, so dark/total != 1/2
+		//Compute the smallest integer k >= 0 such that (45-5k)% <= dark/total <= (55+5k)%
+		int k = (Math.abs(dark * 20 - total * 10) + total - 1) / total - 1;
+		assert 0 <= k && k <= 9;
+		result += k * QrCode.PENALTY_N4;
+		return result;
+	}
+	
+	
+	//Returns the penalty for runs and finder-like patterns in the given lines (rows, or the rows of the transposed
+	//symbol for columns), visiting one run at a time in the same order as the module loop of QrCode.getPenaltyScore().
+	//The run history of QrCode.finderPenaltyAddHistory() is kept in one word, with entry i in bits 8 * i to 8 * i + 7
+	//(run lengths with the light border are at most 2 * size < 256).
+	private static int getLinePenalty(long[] lines, int size) {
+		int result = 0;
+		for (int y = 0; y < size; y++) {
+			long line = lines[y];
+			long history = 0;
+			boolean runColor = false;
+			for (int x = 0; ; runColor = !runColor) {
+				//Length of the run of runColor starting at x, which is 0 if a line starts dark
+				int run = Math.min(Long.numberOfLeadingZeros((runColor ? ~line : line) << x), size - x);
+				x += run;
+				if (run >= 5)
+					result += QrCode.PENALTY_N1 + run - 5;
+				if (x == size) {
+					//Terminate a dark run, and add the light border to the final run, as QrCode.finderPenaltyTerminateAndCount()
+					if (runColor) {
+						history = addHistory(history, run, size);
+						run = 0;
+					}
+					history = addHistory(history, run + size, size);
+					result += countPatterns(history) * QrCode.PENALTY_N3;
+					break;
+				}
+				history = addHistory(history, run, size);
+				if (!runColor)
+					result += countPatterns(history) * QrCode.PENALTY_N3;
+			}
+		}
+		return result;
+	}
+	
+	
+	//Pushes the given run length to the front of the history, like QrCode.finderPenaltyAddHistory().
+	private static long addHistory(long history, int run, int size) {
+		if ((history & 0xFF) == 0)
+			run += size;  //Add light border to initial run
+		return (history << 8 | run) & 0x00FFFFFFFFFFFFFFL;
+	}
+	
+	
+	//Returns 0, 1 or 2 finder-like patterns at the front of the history, like QrCode.finderPenaltyCountPatterns().
+	private static int countPatterns(long history) {
+		int n = (int)(history >>> 8) & 0xFF;
+		if (n == 0 || ((history >>> 16) & 0xFF) != n || ((history >>> 24) & 0xFF) != n * 3
+				|| ((history >>> 32) & 0xFF) != n || ((history >>> 40) & 0xFF) != n)
+			return 0;
+		int first = (int)history & 0xFF;
+		int last = (int)(history >>> 48) & 0xFF;
+		return (first >= n * 4 && last >= n ? 1 : 0) + (last >= n * 4 && first >= n ? 1 : 0);
+	}
+	
+	
+	//Transposes the 64*64 bit matrix whose row i is a[i], with column j at bit 63 - j, by swapping
+	//ever smaller off-diagonal blocks (Hacker's Delight, section 7-3).
+	private static void transpose(long[] a) {
+		long m = 0x00000000FFFFFFFFL;
+		for (int j = 32; j != 0; j >>>= 1, m ^= m << j) {
+			for (int k = 0; k < 64; k = ((k | j) + 1) & ~j) {
+				long t = (a[k] ^ (a[k | j] >>> j)) & m;
+				a[k] ^= t;
+				a[k | j] ^= t << j;
+			}
+		}
+	}
+	
+	
+	//The fixed layout of one version in the word-per-row format. Positions are y * 64 + 63 - x,
+	//so a module is bit (pos & 63) of rows[pos >>> 6].
+	private static final class Tables {
+		
+		static Tables get(int ver) {
+			if (ver < QrCode.MIN_VERSION || ver > MAX_VERSION)
+				throw new IllegalArgumentException("Version value out of range");
+			Tables result = cache.get(ver);
+			if (result == null) {
+				result = new Tables(ver);
+				cache.set(ver, result);  //Racing threads build identical tables
+			}
+			return result;
+		}
+		
+		final int version;
+		final int size;
+		final int rowStride;
+		final long[] functionRows;  //64 words, with the format bits of mask 0 at error correction level LOW
+		final long[][] maskRows;  //maskRows[m] has a 1 at every non-function module that mask m inverts
+		final long[][] maskColumns;  //maskRows[m] transposed
+		final int[] codewordBits;  //Position of bit 7 - j of codeword i at index i * 8 + j
+		final int[] formatBits;  //Positions of the two copies of format bit i at i and 15 + i, then the always dark module
+		final int[] formatColumnBits;  //formatBits in the transposed symbol
+		
+		private Tables(int ver) {
+			version = ver;
+			size = ver * 4 + 17;
+			rowStride = (size + 7) >>> 3;
+			byte[][] patterns = QrCode.getFunctionPatterns(ver);
+			functionRows = toRows(patterns[0]);
+			long[] isFunction = toRows(patterns[1]);
+			
+			maskRows = new long[8][size];
+			for (int msk = 0; msk < 8; msk++) {
+				for (int y = 0; y < size; y++) {
+					for (int x = 0; x < size; x++) {
+						if (QrCode.getMaskBit(msk, x, y))
+							maskRows[msk][y] |= 1L << (63 - x);
+					}
+					maskRows[msk][y] &= ~isFunction[y];
+				}
+			}
+			maskColumns = new long[8][];
+			for (int msk = 0; msk < 8; msk++) {
+				maskColumns[msk] = Arrays.copyOf(maskRows[msk], 64);
+				transpose(maskColumns[msk]);
+			}
+			
+			int[] order = QrCode.getDataModuleOrder(ver);
+			codewordBits = new int[order.length];
+			for (int i = 0; i < order.length; i++)
+				codewordBits[i] = position(order[i] % size, order[i] / size);
+			
+			//Same module order as QrCode.drawFormatBits()
+			formatBits = new int[31];
+			for (int i = 0; i <= 5; i++)
+				formatBits[i] = position(8, i);
+			formatBits[6] = position(8, 7);
+			formatBits[7] = position(8, 8);
+			formatBits[8] = position(7, 8);
+			for (int i = 9; i < 15; i++)
+				formatBits[i] = position(14 - i, 8);
+			for (int i = 0; i < 8; i++)
+				formatBits[15 + i] = position(size - 1 - i, 8);
+			for (int i = 8; i < 15; i++)
+				formatBits[15 + i] = position(8, size - 15 + i);
+			formatBits[30] = position(8, size - 8);
+			formatColumnBits = new int[31];
+			for (int i = 0; i < 31; i++)
+				formatColumnBits[i] = position(formatBits[i] >>> 6, 63 - (formatBits[i] & 63));
+		}
+		
+		private long[] toRows(byte[] packed) {
+			long[] result = new long[64];
+			for (int y = 0; y < size; y++) {
+				for (int i = 0; i < rowStride; i++)
+					result[y] |= (packed[y * rowStride + i] & 0xFFL) << (56 - i * 8);
+			}
+			return result;
+		}
+		
+		private static int position(int x, int y) {
+			return y << 6 | (63 - x);
+		}
+		
+		private static final AtomicReferenceArray<Tables> cache = new AtomicReferenceArray<>(MAX_VERSION + 1);
+	}
+	
+	
+	//Lazily filled cache for getDivisorProducts(), indexed by degree.
+	private static final AtomicReferenceArray<byte[]> divisorProducts = new AtomicReferenceArray<>(31);
+	
+	
+	private QrSmallEncoder() {}  // Not instantiable
+	
+}
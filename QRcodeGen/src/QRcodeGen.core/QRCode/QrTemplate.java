@@ -0,0 +1,123 @@
+package QRCode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+//A precompiled constant text prefix (such as "https://pay.example.com/i/") for QR Codes of one fixed
+//version and error correction level. The prefix is segmented optimally and encoded once; each encode()
+//call then only segments and encodes the variable suffix. The data codewords that lie entirely inside
+//the prefix, and the Reed-Solomon division state of the blocks they fall in, are also computed once.
+//Instances of this class are immutable and thread-safe.
+public final class QrTemplate {
+	
+	//Returns a template for the specified prefix text at the specified error correction level and version.
+	//Unlike QrCode.encodeText(), the version is fixed and the error correction level is never boosted,
+	//because the precomputed codewords and ECC state depend on both.
+	public static QrTemplate compile(CharSequence prefix, QrCode.Ecc ecl, int version) {
+		Objects.requireNonNull(prefix);
+		Objects.requireNonNull(ecl);
+		if (version < QrCode.MIN_VERSION || version > QrCode.MAX_VERSION)
+			throw new IllegalArgumentException("Version value out of range");
+		List<QrSegment> segs = prefix.length() == 0 ? new ArrayList<>()
+			: QrSegmentAdvanced.makeSegmentsOptimally(prefix, ecl, version, version);
+		return new QrTemplate(segs, ecl, version);
+	}
+	
+	
+	//The version number of every QR Code made by this template
+	public final int version;
+	
+	//The error correction level of every QR Code made by this template
+	public final QrCode.Ecc errorCorrectionLevel;
+	
+	//Number of bits taken by the prefix segments, including their headers
+	private final int prefixBits;
+	
+	//The data codewords that are completely determined by the prefix (prefixBits / 8 of them)
+	private final byte[] prefixCodewords;
+	
+	//The low prefixBits % 8 bits of this value are the prefix bits that share a codeword with the suffix
+	private final int prefixTailBits;
+	
+	//Reed-Solomon division state of each block after the prefix codewords, see QrCode.reedSolomonPrefixStates()
+	private final byte[][] eccStates;
+	
+	
+	private QrTemplate(List<QrSegment> segs, QrCode.Ecc ecl, int ver) {
+		version = ver;
+		errorCorrectionLevel = ecl;
+		int capacityBits = QrCode.getNumDataCodewords(ver, ecl) * 8;
+		prefixBits = QrSegment.getTotalBits(segs, ver);
+		if (prefixBits == -1 || prefixBits > capacityBits)
+			throw new DataTooLongException("Prefix too long");
+		
+		BitBuffer bb = new BitBuffer();
+		for (QrSegment seg : segs) {
+			bb.appendBits(seg.mode.modeBits, 4);
+			bb.appendBits(seg.numChars, seg.mode.numCharCountBits(ver));
+			bb.appendData(seg.data);
+		}
+		assert bb.bitLength() == prefixBits;
+		prefixCodewords = new byte[prefixBits / 8];
+		for (int i = 0; i < prefixCodewords.length * 8; i++)
+			prefixCodewords[i >>> 3] |= bb.getBit(i) << (7 - (i & 7));
+		int tail = 0;
+		for (int i = prefixCodewords.length * 8; i < prefixBits; i++)
+			tail = tail << 1 | bb.getBit(i);
+		prefixTailBits = tail;
+		eccStates = QrCode.reedSolomonPrefixStates(ver, ecl, prefixCodewords, prefixCodewords.length);
+	}
+	
+	
+	//Returns a QR Code representing the prefix followed by the specified text, with an automatically chosen mask.
+	public QrCode encode(CharSequence suffix) {
+		return encode(suffix, -1);
+	}
+	
+	
+	//Returns a QR Code representing the prefix followed by the specified text, with the specified mask (-1 for automatic).
+	//The suffix is encoded with QrSegment.makeSegments(). Throws DataTooLongException if it does not fit this template's version.
+	public QrCode encode(CharSequence suffix, int mask) {
+		Objects.requireNonNull(suffix);
+		return encodeSegments(QrSegment.makeSegments(suffix), mask);
+	}
+	
+	
+	//Returns a QR Code representing the prefix followed by the specified segments, with the specified mask (-1 for automatic).
+	public QrCode encodeSegments(List<QrSegment> suffixSegs, int mask) {
+		Objects.requireNonNull(suffixSegs);
+		if (mask < -1 || mask > 7)
+			throw new IllegalArgumentException("Mask value out of range");
+		int capacityBits = QrCode.getNumDataCodewords(version, errorCorrectionLevel) * 8;
+		int suffixBits = QrSegment.getTotalBits(suffixSegs, version);
+		if (suffixBits == -1 || suffixBits > capacityBits - prefixBits) {
+			String msg = "Segment too long";
+			if (suffixBits != -1)
+				msg = String.format("Data length = %d bits, Max capacity = %d bits", prefixBits + suffixBits, capacityBits);
+			throw new DataTooLongException(msg);
+		}
+		
+		//Encode everything after the prefix codewords: the prefix's partial codeword, the suffix segments,
+		//the terminator and the padding (same steps as QrCode.encodeSegments(), starting at a byte boundary)
+		int startBits = prefixCodewords.length * 8;
+		BitBuffer bb = new BitBuffer();
+		bb.appendBits(prefixTailBits, prefixBits - startBits);
+		for (QrSegment seg : suffixSegs) {
+			bb.appendBits(seg.mode.modeBits, 4);
+			bb.appendBits(seg.numChars, seg.mode.numCharCountBits(version));
+			bb.appendData(seg.data);
+		}
+		assert startBits + bb.bitLength() == prefixBits + suffixBits;
+		bb.appendBits(0, Math.min(4, capacityBits - startBits - bb.bitLength()));
+		bb.appendBits(0, (8 - bb.bitLength() % 8) % 8);
+		for (int padByte = 0xEC; startBits + bb.bitLength() < capacityBits; padByte ^= 0xEC ^ 0x11)
+			bb.appendBits(padByte, 8);
+		
+		byte[] dataCodewords = Arrays.copyOf(prefixCodewords, capacityBits / 8);
+		for (int i = 0; i < bb.bitLength(); i++)
+			dataCodewords[prefixCodewords.length + (i >>> 3)] |= bb.getBit(i) << (7 - (i & 7));
+		return new QrCode(version, errorCorrectionLevel, dataCodewords, mask, eccStates, prefixCodewords.length);
+	}
+	
+}
@@ -0,0 +1,5 @@
+//The QR Code encoder: segments, error correction, masking and the module grid. Depends on java.base
+//only, so it can be linked into headless images without AWT.
+module QRcodeGen.core {
+	exports QRCode;
+}
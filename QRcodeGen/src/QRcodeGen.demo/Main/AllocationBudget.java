@@ -0,0 +1,254 @@
+package Main;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import com.sun.management.ThreadMXBean;
+import QRCode.DataTooLongException;
+import QRCode.QrCode;
+import QRCode.QrSegment;
+import QRCode.QrSegmentAdvanced;
+import Render.BitmapWriter;
+import Render.RasterRenderer;
+import Render.SvgWriter;
+
+//Command line check of the bytes allocated per call by the encode and render hot paths, measured with
+//ThreadMXBean.getCurrentThreadAllocatedBytes() after a warm-up. Every operation runs for a matrix of versions
+//and ECLs on a payload that fills the version, and its average allocation per call is compared to a budget.
+//The process exits with status 2 if any case is over budget, so it can gate a build the same way a test does.
+//
+//Budgets are kept in a properties file of "operation.version.ecl=bytes" lines (QRcodeGen/alloc-budgets.properties
+//in this repository, measured on JDK 21), and a case fails if it allocates more than its budget plus the tolerance.
+//Cases without a budget are reported but never fail. After an intended change, --record rewrites the budgets.
+//
+//Usage: AllocationBudget [options]
+//  --budgets FILE            Budgets to check against (default: none, only measure)
+//  --tolerance X             Allowed relative excess over a budget (default 0.10); a budget of 0 allows nothing
+//  --record FILE             Write the measured values as a new budgets file
+//  --report FILE             Write the results as JSON
+//  --versions LIST           Versions to test (default 1,5,10,20,27,40)
+//  --ecl LIST                Error correction levels (default L,M,Q,H)
+//  --iterations N            Measured calls per case, after as many warm-up calls (default 200)
+public final class AllocationBudget {
+	
+	public static void main(String[] args) throws Exception {
+		AllocationBudget check = new AllocationBudget();
+		try {
+			check.parseArgs(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println("Error: " + e.getMessage());
+			System.err.println("Usage: AllocationBudget [--budgets FILE] [--tolerance X] [--record FILE] [--report FILE] [--versions LIST] [--ecl LIST] [--iterations N]");
+			System.exit(1);
+			return;
+		}
+		System.exit(check.run() ? 0 : 2);
+	}
+	
+	
+	//Options
+	private Path budgetsFile;
+	private double tolerance = 0.10;
+	private Path recordFile;
+	private Path reportFile;
+	private int[] versions = {1, 5, 10, 20, 27, 40};
+	private List<QrCode.Ecc> ecls = Arrays.asList(QrCode.Ecc.values());
+	private int iterations = 200;
+	
+	private final ThreadMXBean threadBean = (ThreadMXBean)ManagementFactory.getThreadMXBean();
+	private static volatile Object blackhole;  //Receives the results so they are not optimized away
+	
+	
+	private void parseArgs(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+			String val = args[++i];
+			switch (arg) {
+				case "--budgets":     budgetsFile = Paths.get(val);  break;
+				case "--tolerance":   tolerance = Double.parseDouble(val);  break;
+				case "--record":      recordFile = Paths.get(val);  break;
+				case "--report":      reportFile = Paths.get(val);  break;
+				case "--versions":    versions = Arrays.stream(val.split(",")).mapToInt(Integer::parseInt).toArray();  break;
+				case "--ecl":         ecls = parseEcls(val);  break;
+				case "--iterations":  iterations = Integer.parseInt(val);  break;
+				default:  throw new IllegalArgumentException("Unknown option " + arg);
+			}
+		}
+		for (int ver : versions) {
+			if (ver < QrCode.MIN_VERSION || ver > QrCode.MAX_VERSION)
+				throw new IllegalArgumentException("Version out of range");
+		}
+		if (!(tolerance >= 0) || iterations <= 0)
+			throw new IllegalArgumentException("Value out of range");
+		if (!threadBean.isThreadAllocatedMemorySupported())
+			throw new IllegalArgumentException("Thread allocation measurement is not supported by this JVM");
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+	}
+	
+	
+	private static List<QrCode.Ecc> parseEcls(String s) {
+		List<QrCode.Ecc> result = new ArrayList<>();
+		for (String item : s.toUpperCase(Locale.ROOT).split(",")) {
+			switch (item) {
+				case "L":  result.add(QrCode.Ecc.LOW);  break;
+				case "M":  result.add(QrCode.Ecc.MEDIUM);  break;
+				case "Q":  result.add(QrCode.Ecc.QUARTILE);  break;
+				case "H":  result.add(QrCode.Ecc.HIGH);  break;
+				default:  throw new IllegalArgumentException("Unknown ECL " + item);
+			}
+		}
+		return result;
+	}
+	
+	
+	//Measures every case, prints and writes the results, and returns whether all cases are within budget.
+	private boolean run() throws IOException {
+		Map<String,Long> budgets = new TreeMap<>();
+		if (budgetsFile != null) {
+			Properties props = new Properties();
+			try (var in = Files.newBufferedReader(budgetsFile, StandardCharsets.UTF_8)) {
+				props.load(in);
+			}
+			for (String key : props.stringPropertyNames())
+				budgets.put(key, Long.parseLong(props.getProperty(key).trim()));
+		}
+		
+		List<Case> cases = new ArrayList<>();
+		for (int ver : versions) {
+			for (QrCode.Ecc ecl : ecls) {
+				String text = fillText(ver, ecl);
+				byte[] data = text.getBytes(StandardCharsets.UTF_8);
+				List<QrSegment> segs = QrSegment.makeSegments(text);
+				QrCode qr = QrCode.encodeSegments(segs, ecl, ver, ver, -1, false);
+				int dim = RasterRenderer.getImageSize(qr, 4, 4);
+				byte[] bits = new byte[(dim + 7) / 8 * dim];
+				String suffix = ".v" + ver + "." + "LMQH".charAt(ecl.ordinal());
+				
+				cases.add(measure("encodeText" + suffix, () -> QrCode.encodeText(text, ecl)));
+				cases.add(measure("encodeBinary" + suffix, () -> QrCode.encodeBinary(data, ecl)));
+				cases.add(measure("encodeSegments.fixedMask" + suffix, () -> QrCode.encodeSegments(segs, ecl, ver, ver, 0, false)));
+				cases.add(measure("encodeSegments.autoMask" + suffix, () -> QrCode.encodeSegments(segs, ecl, ver, ver, -1, false)));
+				cases.add(measure("makeSegmentsOptimally" + suffix, () -> QrSegmentAdvanced.makeSegmentsOptimally(text, ecl, ver, ver)));
+				cases.add(measure("renderBits" + suffix, () -> {
+					RasterRenderer.renderBits(qr, 4, 4, bits, 0, (dim + 7) / 8);
+					return bits;
+				}));
+				cases.add(measure("toImage" + suffix, () -> RasterRenderer.toImage(qr, 4, 4)));
+				cases.add(measure("tiffG4" + suffix, () -> BitmapWriter.toBytes(qr, 4, 4, BitmapWriter.Format.TIFF_G4)));
+				cases.add(measure("svg" + suffix, () -> SvgWriter.toSvgString(qr, 4, "#FFFFFF", "#000000")));
+			}
+		}
+		
+		boolean pass = true;
+		System.out.printf("%-36s %12s %12s  %s%n", "case", "bytes/call", "budget", "result");
+		for (Case c : cases) {
+			Long budget = budgets.get(c.name);
+			c.budget = budget != null ? budget : -1;
+			c.pass = budget == null || c.bytesPerCall <= budget * (1 + tolerance);
+			pass &= c.pass;
+			System.out.printf("%-36s %12d %12s  %s%n", c.name, c.bytesPerCall, budget != null ? budget.toString() : "-",
+				budget == null ? "no budget" : c.pass ? "ok" : "OVER by " + (c.bytesPerCall - budget) + " bytes");
+		}
+		System.out.println(pass ? "All cases within budget" : "Allocation budget exceeded");
+		
+		if (recordFile != null)
+			writeBudgets(cases);
+		if (reportFile != null)
+			writeReport(cases, pass);
+		return pass;
+	}
+	
+	
+	//Returns the average number of bytes allocated per call of the given operation, after warming it up.
+	private Case measure(String name, Operation op) {
+		try {
+			for (int i = 0; i < iterations; i++)
+				blackhole = op.call();
+			long overhead = measureCalls(() -> null, iterations);
+			long total = measureCalls(op, iterations);
+			return new Case(name, Math.max(total - overhead, 0) / iterations);
+		} catch (DataTooLongException e) {
+			throw new AssertionError(name, e);
+		}
+	}
+	
+	
+	private long measureCalls(Operation op, int count) {
+		long start = threadBean.getCurrentThreadAllocatedBytes();
+		for (int i = 0; i < count; i++)
+			blackhole = op.call();
+		return threadBean.getCurrentThreadAllocatedBytes() - start;
+	}
+	
+	
+	//Returns the longest text of repeated printable ASCII characters (so in byte mode) that fits the given version and ECL.
+	private static String fillText(int ver, QrCode.Ecc ecl) {
+		String unit = "Lorem ipsum dolor sit amet, consectetur adipiscing elit; ";
+		int lo = 1, hi = 2953;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			String text = unit.repeat(mid / unit.length() + 1).substring(0, mid);
+			try {
+				QrCode.encodeSegments(QrSegment.makeSegments(text), ecl, ver, ver, 0, false);
+				lo = mid;
+			} catch (DataTooLongException e) {
+				hi = mid - 1;
+			}
+		}
+		return unit.repeat(lo / unit.length() + 1).substring(0, lo);
+	}
+	
+	
+	private void writeBudgets(List<Case> cases) throws IOException {
+		try (BufferedWriter out = Files.newBufferedWriter(recordFile, StandardCharsets.UTF_8)) {
+			out.write("# Bytes allocated per call, by operation, version and ECL. Written by Main.AllocationBudget --record on Java "
+				+ System.getProperty("java.version") + "\n");
+			for (Case c : cases)
+				out.write(c.name + "=" + c.bytesPerCall + "\n");
+		}
+	}
+	
+	
+	private void writeReport(List<Case> cases, boolean pass) throws IOException {
+		try (BufferedWriter out = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+			out.write(String.format(Locale.ROOT, "{\"java\":\"%s\",\"iterations\":%d,\"tolerance\":%s,\"pass\":%b,\"cases\":[",
+				System.getProperty("java.version"), iterations, tolerance, pass));
+			for (int i = 0; i < cases.size(); i++) {
+				Case c = cases.get(i);
+				out.write(String.format("%s%n{\"name\":\"%s\",\"bytesPerCall\":%d,\"budget\":%s,\"pass\":%b}",
+					i > 0 ? "," : "", c.name, c.bytesPerCall, c.budget >= 0 ? Long.toString(c.budget) : "null", c.pass));
+			}
+			out.write("\n]}\n");
+		}
+	}
+	
+	
+	private interface Operation {
+		Object call();
+	}
+	
+	
+	private static final class Case {
+		final String name;
+		final long bytesPerCall;
+		long budget;  //-1 if none
+		boolean pass;
+		
+		Case(String name, long bytesPerCall) {
+			this.name = name;
+			this.bytesPerCall = bytesPerCall;
+		}
+	}
+	
+}
@@ -0,0 +1,485 @@
+package Main;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import QRCode.DataTooLongException;
+import QRCode.QrCode;
+import QRCode.QrSegment;
+import Render.RasterRenderer;
+import Render.RenderArchive;
+import Render.SvgWriter;
+
+//Command line tool that generates one QR code per line of a UTF-8 payload file.
+//The input file is memory-mapped and split into line-aligned chunks that are encoded and rendered
+//by worker threads. Rendered files go through a bounded queue to a single writer, so slow storage
+//applies backpressure to the workers instead of letting rendered images pile up in memory.
+//
+//Usage: BulkGenerator --input payloads.txt --output out/ [options]
+//  --output DIR | FILE.zip   Directory tree (one sub-directory per chunk) or a single zip archive
+//  --ecl L|M|Q|H             Error correction level (default M)
+//  --min-version N           Minimum version (default 1)
+//  --max-version N           Maximum version (default 40)
+//  --mask N                  Mask 0 to 7, or -1 for automatic (default -1)
+//  --no-boost-ecl            Do not raise the ECL when the data still fits
+//  --mask-objective M        penalty (default) or runs: fewest dark runs among the masks within
+//                            --mask-tolerance of the best penalty score, for smaller SVG files
+//  --mask-tolerance X        Allowed relative penalty increase for --mask-objective runs (default 0.25)
+//  --format png|svg|bin      Output format (default png). bin is the packed module grid from QrCode.writeTo()
+//  --scale N                 Pixels per module for png (default 4)
+//  --border N                Quiet zone width in modules (default 4)
+//  --threads N               Worker threads (default: available processors)
+//  --chunk-mb N              Target chunk size in MiB (default 8)
+//  --queue N                 Capacity of the writer queue (default 1024)
+//  --archive DIR             RenderArchive of earlier renders: lines rendered before with the same options
+//                            are copied from it instead of being encoded again, and new renders are added
+//  --archive-mb N            Size cap of the archive in MiB (default: none)
+//Exits with status 2 if any line could not be encoded or rendered.
+public final class BulkGenerator {
+	
+	public static void main(String[] args) throws Exception {
+		BulkGenerator gen = new BulkGenerator();
+		try {
+			gen.parseArgs(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println("Error: " + e.getMessage());
+			System.err.println("Usage: BulkGenerator --input FILE --output DIR|FILE.zip [--ecl L|M|Q|H] [--min-version N] [--max-version N]"
+				+ " [--mask N] [--no-boost-ecl] [--mask-objective penalty|runs] [--mask-tolerance X] [--format png|svg|bin] [--scale N] [--border N] [--threads N] [--chunk-mb N] [--queue N] [--archive DIR] [--archive-mb N]");
+			System.exit(1);
+			return;
+		}
+		gen.run();
+		if (gen.codesFailed.sum() > 0 || gen.chunksFailed.sum() > 0)
+			System.exit(2);
+	}
+	
+	
+	//Options
+	private Path input;
+	private Path output;
+	private QrCode.Ecc ecl = QrCode.Ecc.MEDIUM;
+	private int minVersion = QrCode.MIN_VERSION;
+	private int maxVersion = QrCode.MAX_VERSION;
+	private int mask = -1;
+	private boolean boostEcl = true;
+	private QrCode.MaskObjective maskObjective = QrCode.MaskObjective.PENALTY;
+	private double maskTolerance = 0.25;
+	private String format = "png";
+	private int scale = 4;
+	private int border = 4;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private long chunkSize = 8L << 20;
+	private int queueCapacity = 1024;
+	private Path archiveDir;
+	private long archiveBytes = Long.MAX_VALUE;
+	private RenderArchive archive;  //Null if no --archive
+	
+	//Statistics, summed over all threads. Times are in nanoseconds.
+	private final LongAdder codesWritten = new LongAdder();
+	private final LongAdder codesFailed = new LongAdder();
+	private final LongAdder chunksFailed = new LongAdder();  //Tasks that died outside the per-line handling
+	private final LongAdder codesArchived = new LongAdder();
+	private final LongAdder bytesWritten = new LongAdder();
+	private final LongAdder decodeNanos = new LongAdder();
+	private final LongAdder encodeNanos = new LongAdder();
+	private final LongAdder renderNanos = new LongAdder();
+	private final LongAdder queueWaitNanos = new LongAdder();
+	private final LongAdder writeNanos = new LongAdder();
+	
+	//Marks the end of the writer queue.
+	private static final Output END = new Output(null, null, null, null);
+	
+	
+	private void parseArgs(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("--no-boost-ecl")) {
+				boostEcl = false;
+				continue;
+			}
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+			String val = args[++i];
+			switch (arg) {
+				case "--input":        input = Paths.get(val);  break;
+				case "--output":       output = Paths.get(val);  break;
+				case "--ecl":          ecl = parseEcl(val);  break;
+				case "--min-version":  minVersion = Integer.parseInt(val);  break;
+				case "--max-version":  maxVersion = Integer.parseInt(val);  break;
+				case "--mask":         mask = Integer.parseInt(val);  break;
+				case "--mask-objective":  maskObjective = parseMaskObjective(val);  break;
+				case "--mask-tolerance":  maskTolerance = Double.parseDouble(val);  break;
+				case "--format":       format = val.toLowerCase(Locale.ROOT);  break;
+				case "--scale":        scale = Integer.parseInt(val);  break;
+				case "--border":       border = Integer.parseInt(val);  break;
+				case "--threads":      threads = Integer.parseInt(val);  break;
+				case "--chunk-mb":     chunkSize = Long.parseLong(val) << 20;  break;
+				case "--queue":        queueCapacity = Integer.parseInt(val);  break;
+				case "--archive":      archiveDir = Paths.get(val);  break;
+				case "--archive-mb":   archiveBytes = Long.parseLong(val) << 20;  break;
+				default:  throw new IllegalArgumentException("Unknown option " + arg);
+			}
+		}
+		if (input == null || output == null)
+			throw new IllegalArgumentException("--input and --output are required");
+		if (!(QrCode.MIN_VERSION <= minVersion && minVersion <= maxVersion && maxVersion <= QrCode.MAX_VERSION) || mask < -1 || mask > 7)
+			throw new IllegalArgumentException("Invalid version range or mask");
+		if (!format.equals("png") && !format.equals("svg") && !format.equals("bin"))
+			throw new IllegalArgumentException("Unknown format " + format);
+		if (scale <= 0 || border < 0 || !(maskTolerance >= 0) || threads <= 0 || chunkSize <= 0 || chunkSize > Integer.MAX_VALUE || queueCapacity <= 0 || archiveBytes <= 0)
+			throw new IllegalArgumentException("Value out of range");
+	}
+	
+	
+	private static QrCode.Ecc parseEcl(String s) {
+		switch (s.toUpperCase(Locale.ROOT)) {
+			case "L":  return QrCode.Ecc.LOW;
+			case "M":  return QrCode.Ecc.MEDIUM;
+			case "Q":  return QrCode.Ecc.QUARTILE;
+			case "H":  return QrCode.Ecc.HIGH;
+			default:  throw new IllegalArgumentException("Unknown ECL " + s);
+		}
+	}
+	
+	
+	private static QrCode.MaskObjective parseMaskObjective(String s) {
+		switch (s.toLowerCase(Locale.ROOT)) {
+			case "penalty":  return QrCode.MaskObjective.PENALTY;
+			case "runs":     return QrCode.MaskObjective.RUN_COUNT;
+			default:  throw new IllegalArgumentException("Unknown mask objective " + s);
+		}
+	}
+	
+	
+	private void run() throws Exception {
+		long start = System.nanoTime();
+		BlockingQueue<Output> queue = new ArrayBlockingQueue<>(queueCapacity);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<?>> tasks = new ArrayList<>();
+		if (archiveDir != null)
+			archive = RenderArchive.open(archiveDir, archiveBytes);
+		try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+				OutputSink sink = openSink()) {
+			//Split the input into chunks that end just after a newline, and hand one chunk to each task
+			long fileSize = in.size();
+			int chunkIndex = 0;
+			for (long pos = 0; pos < fileSize; chunkIndex++) {
+				long end = alignToLine(in, Math.min(pos + chunkSize, fileSize), fileSize);
+				MappedByteBuffer chunk = in.map(FileChannel.MapMode.READ_ONLY, pos, end - pos);
+				int index = chunkIndex;
+				tasks.add(pool.submit(() -> {
+					processChunk(chunk, index, queue);
+					return null;
+				}));
+				pos = end;
+			}
+			
+			//Signal the writer once every worker has finished, even if one of them failed. The thread is a daemon
+			//so that it cannot keep the JVM alive when the writer stops early and nobody drains the queue.
+			Thread closer = new Thread(() -> {
+				try {
+					for (Future<?> f : tasks) {
+						try {
+							f.get();
+						} catch (ExecutionException e) {
+							chunksFailed.increment();
+							e.getCause().printStackTrace();
+						}
+					}
+					queue.put(END);
+				} catch (InterruptedException | CancellationException e) {}  //The run was abandoned
+			});
+			closer.setDaemon(true);
+			closer.start();
+			
+			//Writer stage runs on this thread
+			while (true) {
+				Output out = queue.take();
+				if (out == END)
+					break;
+				long t = System.nanoTime();
+				long n = -1;
+				if (out.archiveKey != null)
+					n = sink.transfer(out.name, archive, out.archiveKey);
+				if (n == -1) {
+					//Not archived, or compacted away since the worker found it (only possible with a tight cap)
+					byte[] data = out.data != null ? out.data : encodeAndRender(out.text, System.nanoTime());
+					sink.write(out.name, data);
+					n = data.length;
+				}
+				writeNanos.add(System.nanoTime() - t);
+				codesWritten.increment();
+				bytesWritten.add(n);
+			}
+			closer.join();
+		} finally {
+			//Cancel everything if the writer failed, so that blocked workers and queued chunks are released
+			for (Future<?> f : tasks)
+				f.cancel(true);
+			pool.shutdownNow();
+			if (archive != null)
+				archive.close();
+		}
+		printReport(System.nanoTime() - start);
+	}
+	
+	
+	//Returns the offset just after the first newline at or after pos, or fileSize if there is none.
+	private static long alignToLine(FileChannel in, long pos, long fileSize) throws IOException {
+		if (pos >= fileSize)
+			return fileSize;
+		ByteBuffer buf = ByteBuffer.allocate(4096);
+		while (pos < fileSize) {
+			buf.clear();
+			int n = in.read(buf, pos);
+			if (n <= 0)
+				break;
+			for (int i = 0; i < n; i++) {
+				if (buf.get(i) == '\n')
+					return pos + i + 1;
+			}
+			pos += n;
+		}
+		return fileSize;
+	}
+	
+	
+	//Encodes and renders every non-empty line of the given chunk, and queues the results for the writer.
+	//A line that fails is counted and reported, and does not stop the rest of the chunk.
+	private void processChunk(ByteBuffer chunk, int chunkIndex, BlockingQueue<Output> queue) throws InterruptedException {
+		String dir = String.format("c%05d/", chunkIndex);
+		byte[] line = new byte[256];
+		int lineNum = 0;
+		while (chunk.hasRemaining()) {
+			long t0 = System.nanoTime();
+			int len = 0;
+			while (chunk.hasRemaining()) {
+				byte b = chunk.get();
+				if (b == '\n')
+					break;
+				if (len == line.length)
+					line = Arrays.copyOf(line, len * 2);
+				line[len++] = b;
+			}
+			if (len > 0 && line[len - 1] == '\r')
+				len--;
+			lineNum++;
+			if (len == 0)
+				continue;
+			String text = new String(line, 0, len, StandardCharsets.UTF_8);
+			long t1 = System.nanoTime();
+			decodeNanos.add(t1 - t0);
+			
+			String name = String.format("%s%07d.%s", dir, lineNum, format);
+			Output out;
+			try {
+				out = produce(name, text, t1);
+			} catch (DataTooLongException e) {
+				codesFailed.increment();
+				System.err.printf("Chunk %d line %d: %s%n", chunkIndex, lineNum, e.getMessage());
+				continue;
+			} catch (IOException | RuntimeException e) {
+				codesFailed.increment();
+				System.err.printf("Chunk %d line %d: %s%n", chunkIndex, lineNum, e);
+				continue;
+			}
+			
+			long t = System.nanoTime();
+			queue.put(out);
+			queueWaitNanos.add(System.nanoTime() - t);
+		}
+	}
+	
+	
+	//Returns the output for the given line: a reference to its archived file if there is one, so that the writer
+	//copies it straight from the archive, or else a new render (which is archived). t1 is when decoding ended.
+	private Output produce(String name, String text, long t1) throws IOException {
+		byte[] key = null;
+		if (archive != null) {
+			key = RenderArchive.makeKey(text, ecl, minVersion, maxVersion, mask, boostEcl, maskObjective, maskTolerance, format, scale, border);
+			if (archive.length(key) != -1) {
+				codesArchived.increment();
+				return new Output(name, null, key, text);
+			}
+		}
+		byte[] data = encodeAndRender(text, t1);
+		if (key != null)
+			archive.put(key, data);
+		return new Output(name, data, null, null);
+	}
+	
+	
+	private byte[] encodeAndRender(String text, long t1) throws IOException {
+		QrCode qr = QrCode.encodeSegments(QrSegment.makeSegments(text), ecl, minVersion, maxVersion, mask, boostEcl, maskObjective, maskTolerance);
+		long t2 = System.nanoTime();
+		encodeNanos.add(t2 - t1);
+		byte[] data = render(qr);
+		renderNanos.add(System.nanoTime() - t2);
+		return data;
+	}
+	
+	
+	private byte[] render(QrCode qr) throws IOException {
+		switch (format) {
+			case "png":
+				return RasterRenderer.toPng(qr, scale, border);
+			case "svg":
+				return SvgWriter.toSvgString(qr, border, "#FFFFFF", "#000000").getBytes(StandardCharsets.UTF_8);
+			case "bin": {
+				byte[] result = new byte[1 + qr.size * qr.getRowStride()];
+				result[0] = (byte)qr.version;
+				qr.writeTo(result, 1);
+				return result;
+			}
+			default:
+				throw new AssertionError();
+		}
+	}
+	
+	
+	private OutputSink openSink() throws IOException {
+		if (output.toString().toLowerCase(Locale.ROOT).endsWith(".zip"))
+			return new ZipSink(output, format.equals("png") ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+		else
+			return new DirectorySink(output);
+	}
+	
+	
+	private void printReport(long elapsedNanos) {
+		double secs = elapsedNanos / 1e9;
+		long n = codesWritten.sum();
+		System.out.printf("Codes written: %d, failed: %d, output: %.1f MiB%n", n, codesFailed.sum(), bytesWritten.sum() / 1048576.0);
+		if (chunksFailed.sum() > 0)
+			System.out.printf("Chunks aborted: %d%n", chunksFailed.sum());
+		if (archive != null)
+			System.out.printf("Codes from archive: %d%n", codesArchived.sum());
+		System.out.printf("Wall time: %.3f s, throughput: %.0f codes/s with %d threads%n", secs, n / secs, threads);
+		System.out.println("Per-stage time (summed over threads, and average per code):");
+		printStage("decode", decodeNanos.sum(), n);
+		printStage("encode", encodeNanos.sum(), n);
+		printStage("render", renderNanos.sum(), n);
+		printStage("queue wait", queueWaitNanos.sum(), n);
+		printStage("write", writeNanos.sum(), n);
+	}
+	
+	
+	private static void printStage(String name, long nanos, long count) {
+		System.out.printf("  %-10s %10.3f s  %8.2f us%n", name, nanos / 1e9, count > 0 ? nanos / 1e3 / count : 0.0);
+	}
+	
+	
+	//A file waiting to be written: either rendered bytes, or the archive key of an earlier render
+	//(with the line's text, in case the archive drops it before it is written).
+	private static final class Output {
+		final String name;
+		final byte[] data;
+		final byte[] archiveKey;
+		final String text;
+		
+		Output(String name, byte[] data, byte[] archiveKey, String text) {
+			this.name = name;
+			this.data = data;
+			this.archiveKey = archiveKey;
+			this.text = text;
+		}
+	}
+	
+	
+	//Destination for rendered files. Only used from the writer thread.
+	private interface OutputSink extends AutoCloseable {
+		void write(String name, byte[] data) throws IOException;
+		
+		//Writes the archived value for the key and returns its length, or returns -1 if the archive has none.
+		long transfer(String name, RenderArchive archive, byte[] key) throws IOException;
+		
+		void close() throws IOException;
+	}
+	
+	
+	private static final class DirectorySink implements OutputSink {
+		private final Path root;
+		private final Set<String> createdDirs = new HashSet<>();
+		
+		DirectorySink(Path root) throws IOException {
+			this.root = root;
+			Files.createDirectories(root);
+		}
+		
+		public void write(String name, byte[] data) throws IOException {
+			try (OutputStream out = Files.newOutputStream(resolve(name))) {
+				out.write(data);
+			}
+		}
+		
+		//File to file, so FileChannel.transferTo() can copy in the kernel. On -1 the empty file is left
+		//for the caller's write() to replace.
+		public long transfer(String name, RenderArchive archive, byte[] key) throws IOException {
+			try (FileChannel out = FileChannel.open(resolve(name), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				return archive.transferTo(key, out);
+			}
+		}
+		
+		private Path resolve(String name) throws IOException {
+			Path file = root.resolve(name);
+			if (createdDirs.add(name.substring(0, name.indexOf('/'))))
+				Files.createDirectories(file.getParent());
+			return file;
+		}
+		
+		public void close() {}
+	}
+	
+	
+	private static final class ZipSink implements OutputSink {
+		private final ZipOutputStream zip;
+		
+		//PNG files are already deflated, so the caller passes Deflater.NO_COMPRESSION for them.
+		ZipSink(Path file, int level) throws IOException {
+			zip = new ZipOutputStream(Files.newOutputStream(file), StandardCharsets.UTF_8);
+			zip.setLevel(level);
+		}
+		
+		public void write(String name, byte[] data) throws IOException {
+			zip.putNextEntry(new ZipEntry(name));
+			zip.write(data);
+			zip.closeEntry();
+		}
+		
+		//Entries go through the deflater anyway, so there is nothing to gain from transferTo() here.
+		public long transfer(String name, RenderArchive archive, byte[] key) throws IOException {
+			byte[] data = archive.get(key);
+			if (data == null)
+				return -1;
+			write(name, data);
+			return data.length;
+		}
+		
+		public void close() throws IOException {
+			zip.close();
+		}
+	}
+	
+}
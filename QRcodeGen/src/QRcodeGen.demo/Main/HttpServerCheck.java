@@ -0,0 +1,176 @@
+package Main;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import Render.QrHttpServer;
+import Render.RenderArchive;
+
+//Loopback check of QrHttpServer: starts servers on ephemeral ports and sends real HTTP requests, checking
+//the status codes and bodies of a normal render, a cache hit, a conditional request, client errors
+//(bad parameters, a payload too long, a bad method), archive hits, and the 500 answer to a failure inside
+//the server (a closed archive). Prints one line per check and exits with status 1 if any of them fails.
+//
+//Usage: HttpServerCheck
+public final class HttpServerCheck {
+	
+	public static void main(String[] args) throws IOException {
+		HttpServerCheck check = new HttpServerCheck();
+		check.checkCaching();
+		check.checkErrors();
+		check.checkArchive();
+		System.out.printf("%d checks, %d failed%n", check.checks, check.failures);
+		if (check.failures > 0)
+			System.exit(1);
+	}
+	
+	
+	private int checks = 0;
+	private int failures = 0;
+	
+	
+	private void checkCaching() throws IOException {
+		QrHttpServer server = QrHttpServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 100);
+		try {
+			Response first = get(server, "/qr?text=" + encode("Hello, world!"), null);
+			expect("render", first.status == 200 && first.header("Content-Type").equals("image/png") && isPng(first.body));
+			expect("render count after first request", server.getRenderCount() == 1);
+			
+			Response second = get(server, "/qr?text=" + encode("Hello, world!"), null);
+			expect("cache hit", second.status == 200 && Arrays.equals(second.body, first.body));
+			expect("render count after cache hit", server.getRenderCount() == 1);
+			
+			Response svg = get(server, "/qr?text=" + encode("Hello, world!") + "&format=svg", null);
+			expect("svg render", svg.status == 200 && svg.header("Content-Type").equals("image/svg+xml")
+				&& new String(svg.body, StandardCharsets.UTF_8).contains("<svg"));
+			
+			Response notModified = get(server, "/qr?text=" + encode("Hello, world!"), first.header("ETag"));
+			expect("If-None-Match", notModified.status == 304 && notModified.body.length == 0);
+			expect("render count after 304", server.getRenderCount() == 2);  //The PNG and the SVG
+		} finally {
+			server.stop(0);
+		}
+	}
+	
+	
+	private void checkErrors() throws IOException {
+		QrHttpServer server = QrHttpServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 100);
+		try {
+			expect("missing text", get(server, "/qr", null).status == 400);
+			expect("invalid ecl", get(server, "/qr?text=a&ecl=X", null).status == 400);
+			expect("scale out of range", get(server, "/qr?text=a&scale=0", null).status == 400);
+			
+			String tooLong = "x".repeat(3000);  //Byte mode holds at most 2953 bytes, at ECL L
+			Response resp = get(server, "/qr?ecl=L&text=" + tooLong, null);
+			expect("data too long", resp.status == 413 && resp.header("ETag") == null);
+			
+			HttpURLConnection conn = open(server, "/qr?text=a");
+			conn.setRequestMethod("DELETE");
+			expect("bad method", conn.getResponseCode() == 405);
+			conn.disconnect();
+		} finally {
+			server.stop(0);
+		}
+	}
+	
+	
+	private void checkArchive() throws IOException {
+		Path dir = Files.createTempDirectory("qr-archive");
+		RenderArchive archive = RenderArchive.open(dir, Long.MAX_VALUE);
+		QrHttpServer server = QrHttpServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 100, archive);
+		try {
+			Response first = get(server, "/qr?text=archived", null);
+			expect("archive miss", first.status == 200 && isPng(first.body) && archive.count() == 1);
+			
+			Response second = get(server, "/qr?text=archived", null);
+			expect("archive hit", second.status == 200 && Arrays.equals(second.body, first.body)
+				&& second.header("Content-Length").equals(Integer.toString(first.body.length)));
+			
+			archive.close();
+			expect("internal error", get(server, "/qr?text=archived", null).status == 500);
+		} finally {
+			server.stop(0);
+			archive.close();
+			try (var files = Files.list(dir)) {
+				for (Path p : (Iterable<Path>)files::iterator)
+					Files.delete(p);
+			}
+			Files.delete(dir);
+		}
+	}
+	
+	
+	private void expect(String name, boolean ok) {
+		checks++;
+		if (!ok)
+			failures++;
+		System.out.println((ok ? "ok      " : "FAILED  ") + name);
+	}
+	
+	
+	/*---- HTTP ----*/
+	
+	private static Response get(QrHttpServer server, String pathAndQuery, String ifNoneMatch) throws IOException {
+		HttpURLConnection conn = open(server, pathAndQuery);
+		if (ifNoneMatch != null)
+			conn.setRequestProperty("If-None-Match", ifNoneMatch);
+		try {
+			int status = conn.getResponseCode();
+			InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			if (in != null) {
+				try (in) {
+					in.transferTo(body);
+				}
+			}
+			return new Response(status, conn, body.toByteArray());
+		} finally {
+			conn.disconnect();
+		}
+	}
+	
+	
+	private static HttpURLConnection open(QrHttpServer server, String pathAndQuery) throws IOException {
+		InetSocketAddress addr = server.getAddress();
+		URI uri = URI.create("http://" + addr.getHostString() + ":" + addr.getPort() + pathAndQuery);
+		HttpURLConnection conn = (HttpURLConnection)uri.toURL().openConnection();
+		conn.setUseCaches(false);
+		return conn;
+	}
+	
+	
+	private static String encode(String s) {
+		return URLEncoder.encode(s, StandardCharsets.UTF_8);
+	}
+	
+	
+	private static boolean isPng(byte[] b) {
+		return b.length > 8 && (b[0] & 0xFF) == 0x89 && b[1] == 'P' && b[2] == 'N' && b[3] == 'G';
+	}
+	
+	
+	private static final class Response {
+		final int status;
+		final HttpURLConnection conn;
+		final byte[] body;
+		
+		Response(int status, HttpURLConnection conn, byte[] body) {
+			this.status = status;
+			this.conn = conn;
+			this.body = body;
+		}
+		
+		String header(String name) {
+			return conn.getHeaderField(name);
+		}
+	}
+	
+}
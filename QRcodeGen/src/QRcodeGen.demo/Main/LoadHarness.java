@@ -0,0 +1,566 @@
+package Main;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.ThreadMXBean;
+import QRCode.DataTooLongException;
+import QRCode.QrCode;
+import QRCode.QrSegment;
+import Render.BitmapWriter;
+import Render.RasterRenderer;
+import Render.SvgWriter;
+
+//Command line load harness that replays a payload corpus through QrCode encoding and rendering on many
+//threads, for one configuration after another: every combination of thread count, thread kind, ECL,
+//version range and renderer given. Each configuration runs a warm-up period, then a measured period that
+//reports throughput, latency percentiles, allocation rate and GC pauses. Configurations that differ only in
+//thread count are then printed as a scaling curve relative to the smallest thread count.
+//
+//In closed loop (the default) each thread starts its next payload as soon as the previous one is done, and
+//latency is the time of one call. With --rate, payloads are started on a fixed schedule spread over the threads,
+//and latency is measured from the scheduled start, so time spent waiting behind a slow call is included.
+//Every call started (closed loop) or scheduled (fixed rate) in the measured period is recorded, including
+//those that end after it. A configuration that falls behind its rate runs past its duration to catch up, and
+//its throughput, allocation and GC figures cover that extra time.
+//
+//Allocation is the JVM-wide total from ThreadMXBean.getTotalThreadAllocatedBytes() over the measured period,
+//which counts virtual threads through their carriers. GC pauses come from collector notifications; concurrent
+//cycles (e.g. "ZGC Cycles") are not counted as pauses.
+//
+//Usage: LoadHarness [options]
+//  --input FILE              UTF-8 payload corpus, one payload per line (default: a built-in synthetic mix)
+//  --threads LIST            Thread counts, e.g. 1,2,4,8,16,32 (default: powers of 2 up to available processors)
+//  --kind LIST               platform and/or virtual (default platform)
+//  --rate N                  Total payloads per second over all threads; 0 for closed loop (default 0)
+//  --ecl LIST                Error correction levels, e.g. L,M,Q,H (default M)
+//  --versions LIST           Version ranges, e.g. 1-40,10-40 (default 1-40); payloads too long for a range count as errors
+//  --render LIST             none, bits (RasterRenderer.renderBits), png (RasterRenderer.toPng), svg, g4 (Group 4 TIFF) (default none)
+//  --scale N                 Pixels per module for rendering (default 4)
+//  --border N                Quiet zone width in modules (default 4)
+//  --warmup SECONDS          Warm-up time per configuration (default 5)
+//  --duration SECONDS        Measured time per configuration (default 10)
+//  --csv FILE                Append one row per configuration to this file, with a header if it is new
+//  --label NAME              Value of the label column, e.g. a build or commit to compare runs by (default "run")
+public final class LoadHarness {
+	
+	public static void main(String[] args) throws Exception {
+		LoadHarness harness = new LoadHarness();
+		try {
+			harness.parseArgs(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println("Error: " + e.getMessage());
+			System.err.println("Usage: LoadHarness [--input FILE] [--threads LIST] [--kind platform,virtual] [--rate N] [--ecl LIST] [--versions LIST]"
+				+ " [--render none,bits,png,svg,g4] [--scale N] [--border N] [--warmup SECONDS] [--duration SECONDS] [--csv FILE] [--label NAME]");
+			System.exit(1);
+			return;
+		}
+		harness.run();
+	}
+	
+	
+	//Options
+	private Path input;
+	private int[] threadCounts;
+	private List<String> kinds = List.of("platform");
+	private double rate = 0;
+	private List<QrCode.Ecc> ecls = List.of(QrCode.Ecc.MEDIUM);
+	private List<int[]> versionRanges = List.of(new int[] {QrCode.MIN_VERSION, QrCode.MAX_VERSION});
+	private List<String> renders = List.of("none");
+	private int scale = 4;
+	private int border = 4;
+	private double warmupSecs = 5;
+	private double durationSecs = 10;
+	private Path csv;
+	private String label = "run";
+	
+	private List<String> corpus;
+	private final GcListener gcListener = new GcListener();
+	private static volatile long blackhole;  //Receives the workers' results so they are not optimized away
+	
+	
+	private void parseArgs(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+			String val = args[++i];
+			switch (arg) {
+				case "--input":     input = Paths.get(val);  break;
+				case "--threads":   threadCounts = Arrays.stream(val.split(",")).mapToInt(Integer::parseInt).sorted().distinct().toArray();  break;
+				case "--kind":      kinds = parseList(val, "platform", "virtual");  break;
+				case "--rate":      rate = Double.parseDouble(val);  break;
+				case "--ecl":       ecls = parseEcls(val);  break;
+				case "--versions":  versionRanges = parseVersionRanges(val);  break;
+				case "--render":    renders = parseList(val, "none", "bits", "png", "svg", "g4");  break;
+				case "--scale":     scale = Integer.parseInt(val);  break;
+				case "--border":    border = Integer.parseInt(val);  break;
+				case "--warmup":    warmupSecs = Double.parseDouble(val);  break;
+				case "--duration":  durationSecs = Double.parseDouble(val);  break;
+				case "--csv":       csv = Paths.get(val);  break;
+				case "--label":     label = val;  break;
+				default:  throw new IllegalArgumentException("Unknown option " + arg);
+			}
+		}
+		if (threadCounts == null) {
+			List<Integer> counts = new ArrayList<>();
+			int procs = Runtime.getRuntime().availableProcessors();
+			for (int n = 1; n < procs; n *= 2)
+				counts.add(n);
+			counts.add(procs);
+			threadCounts = counts.stream().mapToInt(Integer::intValue).toArray();
+		}
+		if (threadCounts.length == 0 || threadCounts[0] <= 0 || !(rate >= 0) || scale <= 0 || border < 0 || !(warmupSecs >= 0) || !(durationSecs > 0))
+			throw new IllegalArgumentException("Value out of range");
+	}
+	
+	
+	private static List<String> parseList(String s, String... allowed) {
+		List<String> result = new ArrayList<>();
+		for (String item : s.toLowerCase(Locale.ROOT).split(",")) {
+			if (!Arrays.asList(allowed).contains(item))
+				throw new IllegalArgumentException("Unknown value " + item);
+			result.add(item);
+		}
+		return result;
+	}
+	
+	
+	private static List<QrCode.Ecc> parseEcls(String s) {
+		List<QrCode.Ecc> result = new ArrayList<>();
+		for (String item : s.toUpperCase(Locale.ROOT).split(",")) {
+			switch (item) {
+				case "L":  result.add(QrCode.Ecc.LOW);  break;
+				case "M":  result.add(QrCode.Ecc.MEDIUM);  break;
+				case "Q":  result.add(QrCode.Ecc.QUARTILE);  break;
+				case "H":  result.add(QrCode.Ecc.HIGH);  break;
+				default:  throw new IllegalArgumentException("Unknown ECL " + item);
+			}
+		}
+		return result;
+	}
+	
+	
+	private static List<int[]> parseVersionRanges(String s) {
+		List<int[]> result = new ArrayList<>();
+		for (String item : s.split(",")) {
+			String[] parts = item.split("-", 2);
+			int min = Integer.parseInt(parts[0]);
+			int max = parts.length == 2 ? Integer.parseInt(parts[1]) : min;
+			if (!(QrCode.MIN_VERSION <= min && min <= max && max <= QrCode.MAX_VERSION))
+				throw new IllegalArgumentException("Invalid version range " + item);
+			result.add(new int[] {min, max});
+		}
+		return result;
+	}
+	
+	
+	private void run() throws Exception {
+		corpus = input != null ? Files.readAllLines(input, StandardCharsets.UTF_8) : syntheticCorpus(10000);
+		if (corpus.isEmpty())
+			throw new IllegalArgumentException("Empty corpus");
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (bean instanceof NotificationEmitter)
+				((NotificationEmitter)bean).addNotificationListener((notif, handback) -> gcListener.handle(notif.getUserData()), null, null);
+		}
+		System.out.printf("Corpus: %d payloads, %s, label %s, %d processors%n", corpus.size(),
+			rate > 0 ? String.format("fixed rate %.0f/s", rate) : "closed loop", label, Runtime.getRuntime().availableProcessors());
+		System.out.printf("%-8s %4s %3s %-6s %-5s %10s %9s %9s %9s %9s %9s %10s %9s %5s %9s %9s%n",
+			"kind", "thr", "ecl", "ver", "rend", "ops/s", "p50 us", "p99 us", "p99.9 us", "max us", "errors",
+			"alloc MB/s", "B/op", "GCs", "pause ms", "max ms");
+		
+		List<Result> results = new ArrayList<>();
+		for (String kind : kinds) {
+			for (QrCode.Ecc ecl : ecls) {
+				for (int[] versions : versionRanges) {
+					for (String render : renders) {
+						for (int threads : threadCounts) {
+							Result r = runConfig(kind, threads, ecl, versions, render);
+							results.add(r);
+							printResult(r);
+							if (csv != null)
+								appendCsv(r);
+						}
+					}
+				}
+			}
+		}
+		printScaling(results);
+	}
+	
+	
+	//Runs one configuration with a warm-up period and a measured period, and returns its measurements.
+	private Result runConfig(String kind, int threads, QrCode.Ecc ecl, int[] versions, String render) throws InterruptedException {
+		Result result = new Result(kind, threads, ecl, versions, render);
+		long startNanos = System.nanoTime() + 10_000_000;  //Time for all threads to start
+		long measureStart = startNanos + (long)(warmupSecs * 1e9);
+		long measureEnd = measureStart + (long)(durationSecs * 1e9);
+		
+		Worker[] workers = new Worker[threads];
+		Thread[] threadObjs = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker(i, threads, ecl, versions, render, startNanos, measureStart, measureEnd);
+			threadObjs[i] = (kind.equals("virtual") ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true)).start(workers[i]);
+		}
+		
+		sleepUntil(measureStart);
+		ThreadMXBean threadBean = (ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long allocStart = threadBean.getTotalThreadAllocatedBytes();
+		gcListener.reset();
+		//The measured period lasts until the last recorded call ends, so that throughput, allocation and GC
+		//cover the same calls when a fixed rate falls behind
+		for (Thread t : threadObjs)
+			t.join();
+		long endNanos = Math.max(System.nanoTime(), measureEnd);
+		long allocEnd = threadBean.getTotalThreadAllocatedBytes();
+		gcListener.copyTo(result);
+		
+		for (Worker w : workers) {
+			if (w.failure != null)
+				throw new RuntimeException("Worker failed", w.failure);
+			result.latency.add(w.latency);
+			result.errors += w.errors;
+		}
+		result.seconds = (endNanos - measureStart) / 1e9;
+		result.allocBytes = allocStart >= 0 && allocEnd >= 0 ? allocEnd - allocStart : -1;
+		return result;
+	}
+	
+	
+	private static void sleepUntil(long deadline) {
+		for (long now; (now = System.nanoTime()) < deadline; )
+			LockSupport.parkNanos(deadline - now);
+	}
+	
+	
+	//Encodes and renders payloads from its own starting point in the corpus until the measured period ends,
+	//then finishes the call that is in progress (or, at a fixed rate, every call scheduled before the end).
+	private final class Worker implements Runnable {
+		private final int index;
+		private final int threads;
+		private final QrCode.Ecc ecl;
+		private final int minVersion;
+		private final int maxVersion;
+		private final String render;
+		private final long startNanos;
+		private final long measureStart;
+		private final long measureEnd;
+		
+		final Histogram latency = new Histogram();
+		long errors = 0;
+		Throwable failure = null;
+		private byte[] bitsBuffer = new byte[0];
+		private long sink = 0;  //Keeps results alive
+		
+		Worker(int index, int threads, QrCode.Ecc ecl, int[] versions, String render, long startNanos, long measureStart, long measureEnd) {
+			this.index = index;
+			this.threads = threads;
+			this.ecl = ecl;
+			this.minVersion = versions[0];
+			this.maxVersion = versions[1];
+			this.render = render;
+			this.startNanos = startNanos;
+			this.measureStart = measureStart;
+			this.measureEnd = measureEnd;
+		}
+		
+		
+		public void run() {
+			try {
+				int pos = (int)((long)corpus.size() * index / threads);
+				if (rate > 0) {
+					//Thread i takes the payloads scheduled at i, i + threads, i + 2 * threads, ... periods after the start
+					double period = 1e9 / rate;
+					for (long k = index; ; k += threads) {
+						long scheduled = startNanos + (long)(k * period);
+						if (scheduled >= measureEnd)
+							break;
+						sleepUntil(scheduled);
+						boolean ok = process(corpus.get(pos));
+						long end = System.nanoTime();
+						if (scheduled >= measureStart)  //Even if it ends after the measured period, as the slowest calls do
+							record(ok, end - scheduled);
+						pos = pos + 1 < corpus.size() ? pos + 1 : 0;
+					}
+				} else {
+					sleepUntil(startNanos);
+					for (long begin; (begin = System.nanoTime()) < measureEnd; ) {
+						boolean ok = process(corpus.get(pos));
+						long end = System.nanoTime();
+						if (begin >= measureStart)
+							record(ok, end - begin);
+						pos = pos + 1 < corpus.size() ? pos + 1 : 0;
+					}
+				}
+			} catch (Throwable e) {
+				failure = e;
+			}
+			blackhole = sink;
+		}
+		
+		
+		private void record(boolean ok, long nanos) {
+			if (ok)
+				latency.record(nanos);
+			else
+				errors++;
+		}
+		
+		
+		//Encodes and renders one payload, returning false if it does not fit the version range.
+		private boolean process(String text) throws IOException {
+			QrCode qr;
+			try {
+				qr = QrCode.encodeSegments(QrSegment.makeSegments(text), ecl, minVersion, maxVersion, -1, true);
+			} catch (DataTooLongException e) {
+				return false;
+			}
+			switch (render) {
+				case "none":
+					sink += qr.size;
+					break;
+				case "bits": {
+					int dim = RasterRenderer.getImageSize(qr, scale, border);
+					int stride = (dim + 7) >>> 3;
+					if (bitsBuffer.length < stride * dim)
+						bitsBuffer = new byte[stride * dim];
+					RasterRenderer.renderBits(qr, scale, border, bitsBuffer, 0, stride);
+					sink += bitsBuffer[stride * dim / 2];
+					break;
+				}
+				case "png":
+					sink += RasterRenderer.toPng(qr, scale, border).length;
+					break;
+				case "svg":
+					sink += SvgWriter.toSvgString(qr, border, "#FFFFFF", "#000000").length();
+					break;
+				case "g4":
+					sink += BitmapWriter.toBytes(qr, scale, border, BitmapWriter.Format.TIFF_G4).length;
+					break;
+				default:
+					throw new AssertionError();
+			}
+			return true;
+		}
+	}
+	
+	
+	private void printResult(Result r) {
+		System.out.printf("%-8s %4d %3s %-6s %-5s %10.0f %9.1f %9.1f %9.1f %9.1f %9d %10s %9s %5d %9d %9d%n",
+			r.kind, r.threads, eclName(r.ecl), r.versions[0] + "-" + r.versions[1], r.render, r.opsPerSecond(),
+			r.latency.percentile(0.50) / 1e3, r.latency.percentile(0.99) / 1e3, r.latency.percentile(0.999) / 1e3, r.latency.max / 1e3,
+			r.errors, r.allocBytes >= 0 ? String.format("%.1f", r.allocBytes / 1048576.0 / r.seconds) : "n/a",
+			r.allocBytes >= 0 && r.latency.count > 0 ? Long.toString(r.allocBytes / r.latency.count) : "n/a",
+			r.gcCount, r.gcPauseMillis, r.gcMaxPauseMillis);
+	}
+	
+	
+	//Prints throughput against thread count for each group of configurations that differ only in thread count.
+	private void printScaling(List<Result> results) {
+		if (threadCounts.length < 2)
+			return;
+		System.out.println();
+		System.out.println("Scaling (speedup and efficiency relative to " + threadCounts[0] + " thread" + (threadCounts[0] > 1 ? "s" : "") + "):");
+		for (int i = 0; i < results.size(); i += threadCounts.length) {
+			Result base = results.get(i);
+			System.out.printf("%s, ECL %s, versions %d-%d, render %s%n", base.kind, eclName(base.ecl), base.versions[0], base.versions[1], base.render);
+			double maxSpeedup = threadCounts[threadCounts.length - 1] / (double)threadCounts[0];
+			for (int j = 0; j < threadCounts.length; j++) {
+				Result r = results.get(i + j);
+				double speedup = base.opsPerSecond() > 0 ? r.opsPerSecond() / base.opsPerSecond() : 0;
+				double efficiency = speedup * threadCounts[0] / r.threads;
+				int bar = (int)Math.round(Math.min(speedup / maxSpeedup, 1) * 50);
+				System.out.printf("  %4d  %10.0f ops/s  %6.2fx  %5.1f%%  %s%n", r.threads, r.opsPerSecond(), speedup, efficiency * 100, "#".repeat(bar));
+			}
+		}
+	}
+	
+	
+	private void appendCsv(Result r) throws IOException {
+		boolean isNew = !Files.exists(csv) || Files.size(csv) == 0;
+		try (BufferedWriter out = Files.newBufferedWriter(csv, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+			if (isNew)
+				out.write("label,kind,threads,rate,ecl,min_version,max_version,render,ops,errors,ops_per_s,p50_us,p99_us,p999_us,max_us,"
+					+ "alloc_mb_per_s,alloc_bytes_per_op,gc_count,gc_pause_ms,gc_max_pause_ms\n");
+			out.write(String.format(Locale.ROOT, "%s,%s,%d,%.0f,%s,%d,%d,%s,%d,%d,%.1f,%.2f,%.2f,%.2f,%.2f,%.2f,%d,%d,%d,%d%n",
+				label.replace(",", ";"), r.kind, r.threads, rate, eclName(r.ecl), r.versions[0], r.versions[1], r.render,
+				r.latency.count, r.errors, r.opsPerSecond(), r.latency.percentile(0.50) / 1e3, r.latency.percentile(0.99) / 1e3,
+				r.latency.percentile(0.999) / 1e3, r.latency.max / 1e3, r.allocBytes >= 0 ? r.allocBytes / 1048576.0 / r.seconds : -1.0,
+				r.allocBytes >= 0 && r.latency.count > 0 ? r.allocBytes / r.latency.count : -1, r.gcCount, r.gcPauseMillis, r.gcMaxPauseMillis));
+		}
+	}
+	
+	
+	private static String eclName(QrCode.Ecc ecl) {
+		return "LMQH".substring(ecl.ordinal(), ecl.ordinal() + 1);
+	}
+	
+	
+	//Returns a reproducible mix of typical payloads: numeric IDs, URLs, alphanumeric codes and free text.
+	private static List<String> syntheticCorpus(int count) {
+		Random rand = new Random(1);
+		String alnum = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+		String text = "abcdefghijklmnopqrstuvwxyz ABCDEFGHIJKLMNOPQRSTUVWXYZ 0123456789 .,-äöüéñ€";
+		List<String> result = new ArrayList<>(count);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			sb.setLength(0);
+			switch (i % 4) {
+				case 0:
+					sb.append(Long.toString(rand.nextLong() & Long.MAX_VALUE));
+					break;
+				case 1:
+					sb.append("https://example.com/");
+					for (int j = 10 + rand.nextInt(80); j > 0; j--)
+						sb.append(text.charAt(rand.nextInt(26)));
+					sb.append("?id=").append(rand.nextInt(1_000_000));
+					break;
+				case 2:
+					sb.append("ORDER-");
+					for (int j = 8 + rand.nextInt(24); j > 0; j--)
+						sb.append(alnum.charAt(rand.nextInt(alnum.length())));
+					break;
+				default:
+					for (int j = 20 + rand.nextInt(rand.nextInt(10) == 0 ? 1000 : 200); j > 0; j--)
+						sb.append(text.charAt(rand.nextInt(text.length())));
+					break;
+			}
+			result.add(sb.toString());
+		}
+		return result;
+	}
+	
+	
+	//The measurements of one configuration.
+	private static final class Result {
+		final String kind;
+		final int threads;
+		final QrCode.Ecc ecl;
+		final int[] versions;
+		final String render;
+		
+		final Histogram latency = new Histogram();
+		long errors = 0;
+		double seconds;
+		long allocBytes;  //-1 if not supported
+		long gcCount;
+		long gcPauseMillis;
+		long gcMaxPauseMillis;
+		
+		Result(String kind, int threads, QrCode.Ecc ecl, int[] versions, String render) {
+			this.kind = kind;
+			this.threads = threads;
+			this.ecl = ecl;
+			this.versions = versions;
+			this.render = render;
+		}
+		
+		double opsPerSecond() {
+			return latency.count / seconds;
+		}
+	}
+	
+	
+	//A latency histogram in nanoseconds with buckets of at most 1/128 relative width (values below 256 are exact),
+	//so recording is allocation-free and percentiles are within 0.8% regardless of the number of samples.
+	private static final class Histogram {
+		private final long[] counts = new long[256 + 55 * 128];
+		long count = 0;
+		long max = 0;
+		
+		void record(long nanos) {
+			long v = Math.max(nanos, 0);
+			counts[bucket(v)]++;
+			count++;
+			max = Math.max(max, v);
+		}
+		
+		void add(Histogram other) {
+			for (int i = 0; i < counts.length; i++)
+				counts[i] += other.counts[i];
+			count += other.count;
+			max = Math.max(max, other.max);
+		}
+		
+		//Returns the upper bound of the bucket holding the sample at the given quantile, or 0 if there are no samples.
+		long percentile(double q) {
+			if (count == 0)
+				return 0;
+			long rank = Math.max((long)Math.ceil(q * count), 1);
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank)
+					return Math.min(upperBound(i), max);
+			}
+			return max;
+		}
+		
+		private static int bucket(long v) {
+			if (v < 256)
+				return (int)v;
+			int exp = 63 - Long.numberOfLeadingZeros(v);  //At least 8
+			return 256 + (exp - 8) * 128 + (int)(v >>> (exp - 7)) - 128;
+		}
+		
+		private static long upperBound(int bucket) {
+			if (bucket < 256)
+				return bucket;
+			int exp = (bucket - 256) / 128 + 8;
+			long sub = (bucket - 256) % 128 + 128;
+			return ((sub + 1) << (exp - 7)) - 1;
+		}
+	}
+	
+	
+	//Collects the stop-the-world pauses reported by the collectors. Notifications arrive on a JMX thread.
+	private static final class GcListener {
+		private long count;
+		private long totalMillis;
+		private long maxMillis;
+		
+		synchronized void reset() {
+			count = 0;
+			totalMillis = 0;
+			maxMillis = 0;
+		}
+		
+		synchronized void copyTo(Result r) {
+			r.gcCount = count;
+			r.gcPauseMillis = totalMillis;
+			r.gcMaxPauseMillis = maxMillis;
+		}
+		
+		synchronized void handle(Object userData) {
+			if (!(userData instanceof CompositeData))
+				return;
+			GarbageCollectionNotificationInfo info;
+			try {
+				info = GarbageCollectionNotificationInfo.from((CompositeData)userData);
+			} catch (IllegalArgumentException e) {
+				return;  //Not a GC notification
+			}
+			if (info.getGcAction().contains("cycle"))
+				return;  //A concurrent cycle, not a pause
+			long millis = info.getGcInfo().getDuration();
+			count++;
+			totalMillis += millis;
+			maxMillis = Math.max(maxMillis, millis);
+		}
+	}
+	
+}
@@ -0,0 +1,28 @@
+package Main;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import Render.QrHttpServer;
+import Render.RenderArchive;
+
+//Command line launcher of Render.QrHttpServer. By default the server listens on the loopback address only.
+//
+//Usage: QrHttpServerMain [port [archive-dir [bind-address]]]
+//  (default port 8080, 0 picks a free port; no archive by default, "-" for none; default bind address loopback)
+public final class QrHttpServerMain {
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length > 3) {
+			System.err.println("Usage: QrHttpServerMain [port [archive-dir [bind-address]]]");
+			System.exit(1);
+			return;
+		}
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+		RenderArchive archive = args.length > 1 && !args[1].equals("-") ? RenderArchive.open(Paths.get(args[1]), Long.MAX_VALUE) : null;
+		InetAddress bindAddr = args.length > 2 ? InetAddress.getByName(args[2]) : InetAddress.getLoopbackAddress();
+		QrHttpServer server = QrHttpServer.start(new InetSocketAddress(bindAddr, port), 10_000, archive);
+		System.out.println("Listening on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/qr");
+	}
+	
+}
@@ -0,0 +1,11 @@
+/**
+ * 
+ */
+/**
+ * @author navis
+ *
+ */
+module QRcodeGen.demo {
+	requires QRcodeGen.render;
+	requires jdk.management;
+}
@@ -0,0 +1,315 @@
+package Render;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import QRCode.QrCode;
+
+//Writes a QR Code as a black-and-white image file directly from its modules, without ImageIO or
+//BufferedImage: binary PBM (P4), 1-bit BMP, uncompressed or CCITT Group 4 TIFF, and QOI. The pixel
+//rows come from RasterRenderer.renderBits(), so all formats share its scale and quiet zone handling.
+//Provides static functions only; not instantiable.
+public final class BitmapWriter {
+	
+	public enum Format { PBM, BMP, TIFF, TIFF_G4, QOI }
+	
+	
+	//Returns the file bytes of the specified QR Code in the specified format, with square modules of
+	//scale * scale pixels and a light quiet zone of border modules.
+	public static byte[] toBytes(QrCode qr, int scale, int border, Format format) {
+		Objects.requireNonNull(format);
+		int dim = RasterRenderer.getImageSize(qr, scale, border);
+		int stride = (dim + 7) >>> 3;
+		if ((long)stride * dim > Integer.MAX_VALUE - 1024)
+			throw new IllegalArgumentException("Image too large");
+		byte[] bits = new byte[stride * dim];
+		RasterRenderer.renderBits(qr, scale, border, bits, 0, stride);
+		switch (format) {
+			case PBM:      return toPbm(bits, dim, stride);
+			case BMP:      return toBmp(bits, dim, stride);
+			case TIFF:     return toTiff(bits, dim, 1, bits.length);
+			case TIFF_G4:  return toTiffG4(bits, dim, stride);
+			case QOI:      return toQoi(bits, dim, stride);
+			default:  throw new AssertionError();
+		}
+	}
+	
+	
+	//Writes the file bytes of the specified QR Code, as described by toBytes(), to the specified stream.
+	public static void write(QrCode qr, int scale, int border, Format format, OutputStream out) throws IOException {
+		Objects.requireNonNull(out);
+		out.write(toBytes(qr, scale, border, format));
+	}
+	
+	
+	//Writes the file bytes of the specified QR Code, as described by toBytes(), to the specified channel
+	//(e.g. a FileChannel) at its current position.
+	public static void write(QrCode qr, int scale, int border, Format format, WritableByteChannel out) throws IOException {
+		Objects.requireNonNull(out);
+		ByteBuffer buf = ByteBuffer.wrap(toBytes(qr, scale, border, format));
+		while (buf.hasRemaining())
+			out.write(buf);
+	}
+	
+	
+	/*---- Formats ----*/
+	
+	//Netpbm bitmap: a text header, then the rows packed as renderBits() makes them (1 = black).
+	private static byte[] toPbm(byte[] bits, int dim, int stride) {
+		byte[] header = ("P4\n" + dim + " " + dim + "\n").getBytes(StandardCharsets.US_ASCII);
+		byte[] result = new byte[header.length + bits.length];
+		System.arraycopy(header, 0, result, 0, header.length);
+		System.arraycopy(bits, 0, result, header.length, bits.length);
+		return result;
+	}
+	
+	
+	//Windows bitmap with a 2-color palette (index 0 white, 1 black). Rows are stored bottom-up and padded to 4 bytes.
+	private static byte[] toBmp(byte[] bits, int dim, int stride) {
+		int bmpStride = (stride + 3) & ~3;
+		int dataOffset = 14 + 40 + 8;
+		ByteBuffer buf = ByteBuffer.allocate(dataOffset + bmpStride * dim).order(ByteOrder.LITTLE_ENDIAN);
+		buf.put((byte)'B').put((byte)'M').putInt(buf.capacity()).putInt(0).putInt(dataOffset);
+		buf.putInt(40).putInt(dim).putInt(dim).putShort((short)1).putShort((short)1)  //Header size, width, height, planes, bits per pixel
+			.putInt(0).putInt(bmpStride * dim).putInt(2835).putInt(2835).putInt(2).putInt(2);  //No compression, 72 dpi, 2 colors
+		buf.putInt(0xFFFFFF).putInt(0x000000);
+		for (int y = dim - 1; y >= 0; y--)
+			buf.put(bits, y * stride, stride).position(buf.position() + bmpStride - stride);
+		return buf.array();
+	}
+	
+	
+	//Little-endian bilevel TIFF (WhiteIsZero, so 1 = black) with the given data as a single strip,
+	//using compression 1 (none) or 4 (CCITT Group 4). The header is written by TiffHeader.
+	private static byte[] toTiff(byte[] data, int dim, int compression, int dataLen) {
+		ByteBuffer buf = TiffHeader.allocate(dim, dim, compression, dim, dataLen, dataLen, 72, dataLen);
+		buf.put(data, 0, dataLen);
+		return buf.array();
+	}
+	
+	
+	//TIFF with the rows coded by CCITT T.6 (Group 4): each row is coded relative to the row above it, so
+	//the scale - 1 repeated pixel rows of every module row cost one bit per color change each.
+	private static byte[] toTiffG4(byte[] bits, int dim, int stride) {
+		BitOutput out = new BitOutput(bits.length / 8 + 64);
+		for (int y = 0; y < dim; y++) {
+			int cur = y * stride;
+			int ref = y > 0 ? cur - stride : -1;  //-1 for the imaginary all-white row above the image
+			int a0 = -1;
+			int color = 0;  //Of a0: 0 white, 1 black
+			while (a0 < dim) {
+				int a1 = nextChange(bits, cur, a0, dim);
+				int b1 = nextChange(bits, ref, a0, dim);
+				if (b1 < dim && pixel(bits, ref, b1) == color)
+					b1 = nextChange(bits, ref, b1, dim);  //b1 must change to the opposite color of a0
+				int b2 = nextChange(bits, ref, b1, dim);
+				if (b2 < a1) {  //Pass mode
+					out.write(0b0001, 4);
+					a0 = b2;
+				} else if (Math.abs(a1 - b1) <= 3) {  //Vertical mode
+					out.write(VERTICAL_CODES[a1 - b1 + 3], VERTICAL_LENGTHS[a1 - b1 + 3]);
+					a0 = a1;
+					color ^= 1;
+				} else {  //Horizontal mode
+					int a2 = nextChange(bits, cur, a1, dim);
+					out.write(0b001, 3);
+					writeRun(out, color, a1 - Math.max(a0, 0));
+					writeRun(out, color ^ 1, a2 - a1);
+					a0 = a2;
+				}
+			}
+		}
+		out.write(0x001001, 24);  //End of facsimile block (two EOL codes)
+		return toTiff(out.data, dim, 4, out.length());
+	}
+	
+	
+	//Returns the position of the first changing element (a pixel whose color differs from the one on its left,
+	//with white left of the row) after pos, or dim if there is none. A row offset of -1 means an all-white row.
+	private static int nextChange(byte[] bits, int row, int pos, int dim) {
+		if (row < 0)
+			return dim;
+		int prev = pos < 0 ? 0 : pixel(bits, row, pos);
+		for (int x = pos + 1; x < dim; x++) {
+			if (pixel(bits, row, x) != prev)
+				return x;
+		}
+		return dim;
+	}
+	
+	
+	private static int pixel(byte[] bits, int row, int x) {
+		return (bits[row + (x >>> 3)] >>> (7 - (x & 7))) & 1;
+	}
+	
+	
+	//Writes the makeup codes and the terminating code of a run of the given color (0 white, 1 black).
+	private static void writeRun(BitOutput out, int color, int len) {
+		while (len >= 2560 + 64) {
+			out.write(MAKEUP_CODES[color][40], MAKEUP_LENGTHS[color][40]);
+			len -= 2560;
+		}
+		if (len >= 64) {
+			out.write(MAKEUP_CODES[color][len / 64], MAKEUP_LENGTHS[color][len / 64]);
+			len %= 64;
+		}
+		out.write(TERMINATING_CODES[color][len], TERMINATING_LENGTHS[color][len]);
+	}
+	
+	
+	//The "Quite OK Image" format with 3 channels: a 14-byte header, a stream of operations that either repeat
+	//the previous pixel (runs of up to 62), refer to a recently seen color or change it by a small difference,
+	//and an 8-byte end marker. Black and white differ by -1 or +1 per channel (modulo 256), so every color
+	//change is a 1-byte QOI_OP_INDEX or QOI_OP_DIFF and the output is about one byte per color change.
+	private static byte[] toQoi(byte[] bits, int dim, int stride) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(dim * 8 + 32);
+		ByteBuffer header = ByteBuffer.allocate(14).put("qoif".getBytes(StandardCharsets.US_ASCII))
+			.putInt(dim).putInt(dim).put((byte)3).put((byte)0);  //RGB, sRGB with linear alpha
+		out.write(header.array(), 0, 14);
+		int prev = 0x000000;  //The decoder starts with opaque black
+		int[] seen = new int[64];
+		Arrays.fill(seen, -1);
+		int run = 0;
+		for (int y = 0; y < dim; y++) {
+			for (int x = 0; x < dim; x++) {
+				int px = pixel(bits, y * stride, x) != 0 ? 0x000000 : 0xFFFFFF;
+				if (px == prev) {
+					run++;
+					if (run == 62) {
+						out.write(0xC0 | (run - 1));  //QOI_OP_RUN
+						run = 0;
+					}
+					continue;
+				}
+				if (run > 0) {
+					out.write(0xC0 | (run - 1));
+					run = 0;
+				}
+				int r = px >>> 16, g = (px >>> 8) & 0xFF, b = px & 0xFF;
+				int hash = (r * 3 + g * 5 + b * 7 + 255 * 11) % 64;
+				if (seen[hash] == px)
+					out.write(hash);  //QOI_OP_INDEX
+				else {
+					seen[hash] = px;
+					int dr = (byte)(r - (prev >>> 16)), dg = (byte)(g - ((prev >>> 8) & 0xFF)), db = (byte)(b - (prev & 0xFF));
+					if (-2 <= dr && dr <= 1 && -2 <= dg && dg <= 1 && -2 <= db && db <= 1)
+						out.write(0x40 | (dr + 2) << 4 | (dg + 2) << 2 | (db + 2));  //QOI_OP_DIFF
+					else {
+						out.write(0xFE);  //QOI_OP_RGB
+						out.write(r);
+						out.write(g);
+						out.write(b);
+					}
+				}
+				prev = px;
+			}
+		}
+		if (run > 0)
+			out.write(0xC0 | (run - 1));
+		out.write(new byte[] {0, 0, 0, 0, 0, 0, 0, 1}, 0, 8);
+		return out.toByteArray();
+	}
+	
+	
+	/*---- Utilities ----*/
+	
+	//Appends codes most significant bit first, as Group 4 data is laid out with FillOrder 1.
+	private static final class BitOutput {
+		byte[] data;
+		private long bitLength = 0;
+		
+		BitOutput(int capacity) {
+			data = new byte[Math.max(capacity, 16)];
+		}
+		
+		void write(int code, int len) {
+			if ((bitLength + len + 7) >>> 3 > data.length)
+				data = Arrays.copyOf(data, data.length * 2);
+			for (int i = len - 1; i >= 0; i--, bitLength++) {
+				if (((code >>> i) & 1) != 0)
+					data[(int)(bitLength >>> 3)] |= 0x80 >>> (bitLength & 7);
+			}
+		}
+		
+		int length() {
+			return (int)((bitLength + 7) >>> 3);
+		}
+	}
+	
+	
+	//Vertical mode codes for a1 - b1 = -3 to 3
+	private static final int[] VERTICAL_CODES   = {0b0000010, 0b000010, 0b010, 0b1, 0b011, 0b000011, 0b0000011};
+	private static final int[] VERTICAL_LENGTHS = {7, 6, 3, 1, 3, 6, 7};
+	
+	//Run length codes of ITU-T T.4, indexed by color (0 white, 1 black) then by run length
+	//(terminating, 0 to 63) or by run length / 64 (makeup, 1 to 40; 28 and up are shared by both colors)
+	private static final int[][] TERMINATING_CODES   = new int[2][64];
+	private static final int[][] TERMINATING_LENGTHS = new int[2][64];
+	private static final int[][] MAKEUP_CODES   = new int[2][41];
+	private static final int[][] MAKEUP_LENGTHS = new int[2][41];
+	
+	static {
+		String[] whiteTerm = {
+			"00110101", "000111", "0111", "1000", "1011", "1100", "1110", "1111",
+			"10011", "10100", "00111", "01000", "001000", "000011", "110100", "110101",
+			"101010", "101011", "0100111", "0001100", "0001000", "0010111", "0000011", "0000100",
+			"0101000", "0101011", "0010011", "0100100", "0011000", "00000010", "00000011", "00011010",
+			"00011011", "00010010", "00010011", "00010100", "00010101", "00010110", "00010111", "00101000",
+			"00101001", "00101010", "00101011", "00101100", "00101101", "00000100", "00000101", "00001010",
+			"00001011", "01010010", "01010011", "01010100", "01010101", "00100100", "00100101", "01011000",
+			"01011001", "01011010", "01011011", "01001010", "01001011", "00110010", "00110011", "00110100",
+		};
+		String[] blackTerm = {
+			"0000110111", "010", "11", "10", "011", "0011", "0010", "00011",
+			"000101", "000100", "0000100", "0000101", "0000111", "00000100", "00000111", "000011000",
+			"0000010111", "0000011000", "0000001000", "00001100111", "00001101000", "00001101100", "00000110111", "00000101000",
+			"00000010111", "00000011000", "000011001010", "000011001011", "000011001100", "000011001101", "000001101000", "000001101001",
+			"000001101010", "000001101011", "000011010010", "000011010011", "000011010100", "000011010101", "000011010110", "000011010111",
+			"000001101100", "000001101101", "000011011010", "000011011011", "000001010100", "000001010101", "000001010110", "000001010111",
+			"000001100100", "000001100101", "000001010010", "000001010011", "000000100100", "000000110111", "000000111000", "000000100111",
+			"000000101000", "000001011000", "000001011001", "000000101011", "000000101100", "000001011010", "000001100110", "000001100111",
+		};
+		String[] whiteMakeup = {  //64 to 1728
+			"11011", "10010", "010111", "0110111", "00110110", "00110111", "01100100", "01100101",
+			"01101000", "01100111", "011001100", "011001101", "011010010", "011010011", "011010100", "011010101",
+			"011010110", "011010111", "011011000", "011011001", "011011010", "011011011", "010011000", "010011001",
+			"010011010", "011000", "010011011",
+		};
+		String[] blackMakeup = {  //64 to 1728
+			"0000001111", "000011001000", "000011001001", "000001011011", "000000110011", "000000110100", "000000110101", "0000001101100",
+			"0000001101101", "0000001001010", "0000001001011", "0000001001100", "0000001001101", "0000001110010", "0000001110011", "0000001110100",
+			"0000001110101", "0000001110110", "0000001110111", "0000001010010", "0000001010011", "0000001010100", "0000001010101", "0000001011010",
+			"0000001011011", "0000001100100", "0000001100101",
+		};
+		String[] sharedMakeup = {  //1792 to 2560
+			"00000001000", "00000001100", "00000001101", "000000010010", "000000010011", "000000010100", "000000010101",
+			"000000010110", "000000010111", "000000011100", "000000011101", "000000011110", "000000011111",
+		};
+		for (int i = 0; i < 64; i++) {
+			setCode(TERMINATING_CODES, TERMINATING_LENGTHS, 0, i, whiteTerm[i]);
+			setCode(TERMINATING_CODES, TERMINATING_LENGTHS, 1, i, blackTerm[i]);
+		}
+		for (int i = 0; i < 27; i++) {
+			setCode(MAKEUP_CODES, MAKEUP_LENGTHS, 0, i + 1, whiteMakeup[i]);
+			setCode(MAKEUP_CODES, MAKEUP_LENGTHS, 1, i + 1, blackMakeup[i]);
+		}
+		for (int i = 0; i < 13; i++) {
+			setCode(MAKEUP_CODES, MAKEUP_LENGTHS, 0, i + 28, sharedMakeup[i]);
+			setCode(MAKEUP_CODES, MAKEUP_LENGTHS, 1, i + 28, sharedMakeup[i]);
+		}
+	}
+	
+	private static void setCode(int[][] codes, int[][] lengths, int color, int index, String bits) {
+		codes[color][index] = Integer.parseInt(bits, 2);
+		lengths[color][index] = bits.length();
+	}
+	
+	
+	private BitmapWriter() {}  // Not instantiable
+	
+}
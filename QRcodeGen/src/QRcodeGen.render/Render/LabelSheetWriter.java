@@ -0,0 +1,329 @@
+package Render;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import QRCode.QrCode;
+
+//Writes sheets of QR Code labels (a grid of symbols, each with an optional caption line below it)
+//as black-and-white 1-bit PNG or uncompressed TIFF images, without ever holding the whole sheet in memory.
+//The sheet is produced one label row (a horizontal stripe) at a time: stripes are rendered in parallel
+//by worker threads and written in order, and at most twice as many stripes as threads exist at once,
+//so memory use depends on the sheet width and the label height, not on the number of labels.
+//Instances of this class are immutable and thread-safe.
+public final class LabelSheetWriter {
+	
+	public enum Format { PNG, TIFF }
+	
+	
+	//Returns a writer for sheets with the specified number of label columns, module size in pixels, quiet zone
+	//in modules, outer margin and spacing between labels in pixels, and caption font (null for no captions).
+	public static LabelSheetWriter create(int columns, int scale, int border, int margin, int spacing, Font captionFont) {
+		if (columns <= 0 || scale <= 0 || border < 0 || margin < 0 || spacing < 0)
+			throw new IllegalArgumentException("Value out of range");
+		return new LabelSheetWriter(columns, scale, border, margin, spacing, captionFont);
+	}
+	
+	
+	//Layout parameters
+	public final int columns;
+	public final int scale;
+	public final int border;
+	public final int margin;
+	public final int spacing;
+	private final Font captionFont;  //Can be null
+	private final int captionAscent;
+	private final int captionHeight;  //0 without captions
+	
+	
+	private LabelSheetWriter(int columns, int scale, int border, int margin, int spacing, Font captionFont) {
+		this.columns = columns;
+		this.scale = scale;
+		this.border = border;
+		this.margin = margin;
+		this.spacing = spacing;
+		this.captionFont = captionFont;
+		if (captionFont != null) {
+			Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_BINARY).createGraphics();
+			FontMetrics fm = g.getFontMetrics(captionFont);
+			captionAscent = fm.getAscent();
+			captionHeight = fm.getHeight();
+			g.dispose();
+		} else {
+			captionAscent = 0;
+			captionHeight = 0;
+		}
+	}
+	
+	
+	//Writes a sheet of the specified QR Codes, filled row by row, to the specified stream, and leaves the stream open.
+	//captions is null or has one entry (which may be null for none) per code. Every label cell is as large as the
+	//largest symbol; smaller symbols are centered in it. The resolution in dots per inch is recorded in the file.
+	//Uses the specified number of rendering threads besides the calling thread, which does the writing.
+	public void write(List<QrCode> codes, List<String> captions, Format format, int dpi, int threads, OutputStream out) throws IOException {
+		Objects.requireNonNull(codes);
+		Objects.requireNonNull(format);
+		Objects.requireNonNull(out);
+		if (captions != null && captions.size() != codes.size())
+			throw new IllegalArgumentException("Number of captions differs from number of codes");
+		if (codes.isEmpty())
+			throw new IllegalArgumentException("No codes");
+		if (dpi <= 0 || threads <= 0)
+			throw new IllegalArgumentException("Value out of range");
+		
+		int cellSize = 0;
+		for (QrCode qr : codes)
+			cellSize = Math.max(RasterRenderer.getImageSize(qr, scale, border), cellSize);
+		int cols = Math.min(columns, codes.size());
+		int rows = (codes.size() + columns - 1) / columns;
+		long width  = margin * 2L + (long)cols * cellSize + (cols - 1L) * spacing;
+		long height = margin * 2L + (long)rows * (cellSize + captionHeight) + (rows - 1L) * spacing;
+		if (width > Integer.MAX_VALUE - 7 || height > Integer.MAX_VALUE
+				|| ((width + 7) >>> 3) * (cellSize + captionHeight + (long)spacing) > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Sheet too large");
+		Sheet sheet = new Sheet(codes, captions, cellSize, (int)width, (int)height, rows);
+		
+		RowSink sink = format == Format.PNG ? new PngSink(out, sheet, dpi) : new TiffSink(out, sheet, dpi);
+		byte[] blank = new byte[sheet.rowBytes * Math.max(margin, 1)];
+		sink.writeRows(blank, margin);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			//Keep a bounded window of stripes in flight, and write them in order as they complete
+			ArrayDeque<Future<byte[]>> window = new ArrayDeque<>();
+			int next = 0;
+			for (int row = 0; row < rows; row++) {
+				while (next < rows && window.size() < threads * 2) {
+					int r = next++;
+					window.add(pool.submit(() -> sheet.renderStripe(r)));
+				}
+				byte[] stripe;
+				try {
+					stripe = window.remove().get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof RuntimeException)
+						throw (RuntimeException)e.getCause();
+					throw new IllegalStateException(e.getCause());
+				}
+				sink.writeRows(stripe, stripe.length / sheet.rowBytes);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		sink.writeRows(blank, margin);
+		sink.finish();
+	}
+	
+	
+	//Black and white, with pixel value 1 = black as in RasterRenderer.renderBits()
+	private static final IndexColorModel COLOR_MODEL = new IndexColorModel(1, 2,
+		new byte[] {(byte)0xFF, 0}, new byte[] {(byte)0xFF, 0}, new byte[] {(byte)0xFF, 0});
+	
+	
+	//The geometry and content of one sheet being written.
+	private final class Sheet {
+		final List<QrCode> codes;
+		final List<String> captions;
+		final int cellSize;
+		final int width;
+		final int height;
+		final int rows;
+		final int rowBytes;  //Packed bytes per pixel row
+		
+		Sheet(List<QrCode> codes, List<String> captions, int cellSize, int width, int height, int rows) {
+			this.codes = codes;
+			this.captions = captions;
+			this.cellSize = cellSize;
+			this.width = width;
+			this.height = height;
+			this.rows = rows;
+			rowBytes = (width + 7) >>> 3;
+		}
+		
+		
+		//Returns the packed pixel rows of the given label row, followed by the spacing below it (except for the last row).
+		byte[] renderStripe(int row) {
+			int labelHeight = cellSize + captionHeight;
+			int stripeHeight = labelHeight + (row < rows - 1 ? spacing : 0);
+			byte[] pixels = new byte[rowBytes * stripeHeight];
+			Graphics2D g = null;
+			if (captions != null && captionFont != null) {
+				WritableRaster raster = Raster.createPackedRaster(new DataBufferByte(pixels, pixels.length), width, stripeHeight, 1, null);
+				g = new BufferedImage(COLOR_MODEL, raster, false, null).createGraphics();
+				g.setFont(captionFont);
+				g.setColor(Color.BLACK);
+			}
+			try {
+				for (int col = 0; col < columns; col++) {
+					int i = row * columns + col;
+					if (i >= codes.size())
+						break;
+					QrCode qr = codes.get(i);
+					int cellX = margin + col * (cellSize + spacing);
+					int dim = RasterRenderer.getImageSize(qr, scale, border);
+					int pad = (cellSize - dim) / 2;
+					RasterRenderer.renderBits(qr, scale, border, pixels, pad * rowBytes, rowBytes, cellX + pad);
+					String caption = captions != null ? captions.get(i) : null;
+					if (g != null && caption != null && !caption.isEmpty()) {
+						int textWidth = g.getFontMetrics().stringWidth(caption);
+						g.setClip(cellX, cellSize, cellSize, captionHeight);
+						g.drawString(caption, cellX + Math.max((cellSize - textWidth) / 2, 0), cellSize + captionAscent);
+					}
+				}
+			} finally {
+				if (g != null)
+					g.dispose();
+			}
+			return pixels;
+		}
+	}
+	
+	
+	//Receives the packed pixel rows of a sheet from top to bottom.
+	private interface RowSink {
+		void writeRows(byte[] rows, int numRows) throws IOException;
+		
+		void finish() throws IOException;
+	}
+	
+	
+	//1-bit palette PNG. The image data is deflated as it arrives and written in IDAT chunks of up to 64 KiB.
+	private static final class PngSink implements RowSink {
+		private final OutputStream out;
+		private final int rowBytes;
+		private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		private final DeflaterOutputStream idat;
+		
+		PngSink(OutputStream out, Sheet sheet, int dpi) throws IOException {
+			this.out = out;
+			rowBytes = sheet.rowBytes;
+			out.write(new byte[] {(byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+			ByteBuffer ihdr = ByteBuffer.allocate(13);
+			ihdr.putInt(sheet.width).putInt(sheet.height);
+			ihdr.put((byte)1).put((byte)3).put((byte)0).put((byte)0).put((byte)0);  //Bit depth, palette, compression, filter, interlace
+			writeChunk(out, "IHDR", ihdr.array(), 13);
+			writeChunk(out, "PLTE", new byte[] {(byte)0xFF, (byte)0xFF, (byte)0xFF, 0, 0, 0}, 6);
+			int ppm = (int)Math.round(dpi / 0.0254);
+			ByteBuffer phys = ByteBuffer.allocate(9);
+			phys.putInt(ppm).putInt(ppm).put((byte)1);  //Unit is the meter
+			writeChunk(out, "pHYs", phys.array(), 9);
+			idat = new DeflaterOutputStream(new ChunkStream(out, "IDAT", 1 << 16), deflater, 1 << 16);
+		}
+		
+		public void writeRows(byte[] rows, int numRows) throws IOException {
+			for (int i = 0; i < numRows; i++) {
+				idat.write(0);  //Filter type None
+				idat.write(rows, i * rowBytes, rowBytes);
+			}
+		}
+		
+		public void finish() throws IOException {
+			try {
+				idat.close();  //Flushes the last IDAT chunk but leaves out open
+			} finally {
+				deflater.end();
+			}
+			writeChunk(out, "IEND", new byte[0], 0);
+		}
+	}
+	
+	
+	//Buffers bytes and writes them as PNG chunks of the given type, without closing the underlying stream.
+	private static final class ChunkStream extends OutputStream {
+		private final OutputStream out;
+		private final String type;
+		private final byte[] buffer;
+		private int length;
+		
+		ChunkStream(OutputStream out, String type, int chunkSize) {
+			this.out = out;
+			this.type = type;
+			buffer = new byte[chunkSize];
+		}
+		
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte)b}, 0, 1);
+		}
+		
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				int n = Math.min(buffer.length - length, len);
+				System.arraycopy(b, off, buffer, length, n);
+				length += n;
+				off += n;
+				len -= n;
+				if (length == buffer.length)
+					flush();
+			}
+		}
+		
+		public void flush() throws IOException {
+			if (length > 0) {
+				writeChunk(out, type, buffer, length);
+				length = 0;
+			}
+		}
+		
+		public void close() throws IOException {
+			flush();
+		}
+	}
+	
+	
+	private static void writeChunk(OutputStream out, String type, byte[] data, int len) throws IOException {
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data, 0, len);
+		ByteBuffer head = ByteBuffer.allocate(8).putInt(len).put(typeBytes);
+		out.write(head.array());
+		out.write(data, 0, len);
+		out.write(ByteBuffer.allocate(4).putInt((int)crc.getValue()).array());
+	}
+	
+	
+	//Uncompressed TIFF, with the header written by TiffHeader. Since the size of every strip is known in
+	//advance, the header and the strip table are written first and the pixel rows follow as they arrive.
+	private static final class TiffSink implements RowSink {
+		private final OutputStream out;
+		private final int rowBytes;
+		
+		TiffSink(OutputStream out, Sheet sheet, int dpi) throws IOException {
+			this.out = out;
+			rowBytes = sheet.rowBytes;
+			int rowsPerStrip = Math.max((1 << 16) / rowBytes, 1);
+			ByteBuffer header = TiffHeader.allocate(sheet.width, sheet.height, 1, rowsPerStrip,
+				(long)rowBytes * rowsPerStrip, (long)rowBytes * sheet.height, dpi, 0);
+			out.write(header.array());
+		}
+		
+		public void writeRows(byte[] rows, int numRows) throws IOException {
+			out.write(rows, 0, numRows * rowBytes);
+		}
+		
+		public void finish() {}
+	}
+	
+}
@@ -0,0 +1,417 @@
+package Render;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import QRCode.DataTooLongException;
+import QRCode.QrCode;
+
+//Small HTTP rendering service built on com.sun.net.httpserver, one virtual thread per request, for embedding
+//in an application: start() binds it to the given address and port, and stop() shuts it down.
+//
+//  GET /qr?text=...&ecl=L|M|Q|H&format=png|svg&scale=N&border=N
+//
+//The ETag of a response is a hash of the normalized encode parameters, so a matching If-None-Match
+//is answered with 304 before anything is encoded. Encoded symbols and rendered bytes are kept in two
+//bounded LRU caches, and concurrent requests for the same key wait on a single computation.
+//Rendered bytes can also be kept in a RenderArchive on disk, so that they survive restarts; responses found
+//there are streamed from the archive's files with RenderArchive.transferTo().
+//Failures inside the server are answered with 500 and logged through System.Logger.
+//Instances of this class are thread-safe.
+public final class QrHttpServer {
+	
+	//Starts a server bound to the given address and port (port 0 picks a free one, see getAddress()), caching
+	//up to the given number of symbols and of rendered responses. To serve the local machine only, bind to
+	//InetAddress.getLoopbackAddress().
+	public static QrHttpServer start(InetSocketAddress addr, int cacheEntries) throws IOException {
+		return start(addr, cacheEntries, null);
+	}
+	
+	
+	//Starts a server like the function above that also looks up and stores rendered responses in the given
+	//archive (null for none). The archive stays open when the server stops.
+	public static QrHttpServer start(InetSocketAddress addr, int cacheEntries, RenderArchive archive) throws IOException {
+		Objects.requireNonNull(addr);
+		if (cacheEntries < 0)
+			throw new IllegalArgumentException("Invalid cache size");
+		QrHttpServer result = new QrHttpServer(addr, cacheEntries, archive);
+		result.server.start();
+		return result;
+	}
+	
+	
+	//Fields
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Memo<SymbolKey,QrCode> symbols;
+	private final Memo<RenderKey,byte[]> renders;
+	private final RenderArchive archive;  //Can be null
+	
+	
+	private QrHttpServer(InetSocketAddress addr, int cacheEntries, RenderArchive archive) throws IOException {
+		this.archive = archive;
+		symbols = new Memo<>(cacheEntries);
+		renders = new Memo<>(cacheEntries);
+		executor = Executors.newVirtualThreadPerTaskExecutor();
+		server = HttpServer.create(addr, 0);
+		server.setExecutor(executor);
+		server.createContext("/qr", this::handle);
+	}
+	
+	
+	//Returns the address the server is bound to, including the actual port.
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+	
+	
+	//Stops accepting requests, waits up to the given number of seconds for open exchanges, and releases the threads.
+	public void stop(int delaySeconds) {
+		server.stop(delaySeconds);
+		executor.shutdown();
+	}
+	
+	
+	//Returns the number of responses rendered (or read from the archive into the cache) so far,
+	//i.e. the misses of the in-memory cache of rendered bytes.
+	public long getRenderCount() {
+		return renders.computations.sum();
+	}
+	
+	
+	private void handle(HttpExchange ex) throws IOException {
+		try (ex) {
+			try {
+				respond(ex);
+			} catch (RuntimeException e) {  //E.g. a failed render or a closed archive
+				logger.log(System.Logger.Level.WARNING, "Error serving " + ex.getRequestURI(), e);
+				if (ex.getResponseCode() == -1)  //Else the response is cut short, and the client sees that
+					sendError(ex, 500, "Internal server error");
+			}
+		}
+	}
+	
+	
+	private void respond(HttpExchange ex) throws IOException {
+		if (!ex.getRequestMethod().equals("GET") && !ex.getRequestMethod().equals("HEAD")) {
+			sendError(ex, 405, "Method not allowed");
+			return;
+		}
+		RenderKey key;
+		try {
+			key = parseQuery(ex.getRequestURI().getRawQuery());
+		} catch (IllegalArgumentException e) {
+			sendError(ex, 400, e.getMessage());
+			return;
+		}
+		
+		String etag = key.etag();
+		ex.getResponseHeaders().set("ETag", etag);
+		ex.getResponseHeaders().set("Cache-Control", "public, max-age=31536000, immutable");
+		if (etagMatches(ex.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+			ex.sendResponseHeaders(304, -1);
+			return;
+		}
+		
+		if (archive != null && sendArchived(ex, key))
+			return;
+		byte[] body;
+		try {
+			body = renders.get(key, this::render);
+		} catch (DataTooLongException e) {
+			sendError(ex, 413, e.getMessage());
+			return;
+		}
+		ex.getResponseHeaders().set("Content-Type", key.contentType());
+		if (ex.getRequestMethod().equals("HEAD")) {
+			ex.sendResponseHeaders(200, -1);
+			return;
+		}
+		ex.sendResponseHeaders(200, body.length);
+		try (OutputStream out = ex.getResponseBody()) {
+			out.write(body);
+		}
+	}
+	
+	
+	//Sends the archived render for the key, streamed from the archive's segment file instead of being read
+	//into an array first, and returns true; or returns false (sending nothing) if the archive does not have it.
+	private boolean sendArchived(HttpExchange ex, RenderKey key) throws IOException {
+		byte[] id = key.archiveKey();
+		long len = archive.length(id);
+		if (len < 0)
+			return false;
+		ex.getResponseHeaders().set("Content-Type", key.contentType());
+		if (ex.getRequestMethod().equals("HEAD")) {
+			ex.sendResponseHeaders(200, -1);
+			return true;
+		}
+		ex.sendResponseHeaders(200, len);
+		try (OutputStream out = ex.getResponseBody()) {
+			//A compaction between length() and here can drop the entry (if the archive has a tight cap);
+			//the response is then cut short, which the client sees as a failed request
+			if (archive.transferTo(id, Channels.newChannel(out)) != len)
+				throw new IOException("Archived render dropped while sending it");
+		}
+		return true;
+	}
+	
+	
+	private byte[] render(RenderKey key) {
+		if (archive == null)
+			return renderNew(key);
+		byte[] id = key.archiveKey();
+		try {
+			byte[] result = archive.get(id);
+			if (result == null) {
+				result = renderNew(key);
+				archive.put(id, result);
+			}
+			return result;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	
+	private byte[] renderNew(RenderKey key) {
+		QrCode qr = symbols.get(key.symbol, k -> QrCode.encodeText(k.text, k.ecl));
+		if (key.format.equals("svg"))
+			return SvgWriter.toSvgString(qr, key.border, "#FFFFFF", "#000000").getBytes(StandardCharsets.UTF_8);
+		return RasterRenderer.toPng(qr, key.scale, key.border);
+	}
+	
+	
+	private static RenderKey parseQuery(String rawQuery) {
+		Map<String,String> params = new HashMap<>();
+		if (rawQuery != null) {
+			for (String pair : rawQuery.split("&")) {
+				int i = pair.indexOf('=');
+				String name = URLDecoder.decode(i == -1 ? pair : pair.substring(0, i), StandardCharsets.UTF_8);
+				String value = i == -1 ? "" : URLDecoder.decode(pair.substring(i + 1), StandardCharsets.UTF_8);
+				params.putIfAbsent(name, value);
+			}
+		}
+		String text = params.get("text");
+		if (text == null)
+			throw new IllegalArgumentException("Missing text parameter");
+		QrCode.Ecc ecl;
+		switch (params.getOrDefault("ecl", "M").toUpperCase(Locale.ROOT)) {
+			case "L":  ecl = QrCode.Ecc.LOW;       break;
+			case "M":  ecl = QrCode.Ecc.MEDIUM;    break;
+			case "Q":  ecl = QrCode.Ecc.QUARTILE;  break;
+			case "H":  ecl = QrCode.Ecc.HIGH;      break;
+			default:  throw new IllegalArgumentException("Invalid ecl");
+		}
+		String format = params.getOrDefault("format", "png").toLowerCase(Locale.ROOT);
+		if (!format.equals("png") && !format.equals("svg"))
+			throw new IllegalArgumentException("Invalid format");
+		int scale = parseInt(params.get("scale"), 4, 1, 64);
+		int border = parseInt(params.get("border"), 4, 0, 64);
+		if (format.equals("svg"))
+			scale = 1;  //SVG output does not depend on the scale, so normalize it for the caches and the ETag
+		return new RenderKey(new SymbolKey(text, ecl), format, scale, border);
+	}
+	
+	
+	private static int parseInt(String s, int defaultVal, int min, int max) {
+		if (s == null)
+			return defaultVal;
+		int result;
+		try {
+			result = Integer.parseInt(s);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number: " + s);
+		}
+		if (result < min || result > max)
+			throw new IllegalArgumentException("Value out of range: " + s);
+		return result;
+	}
+	
+	
+	//Tests whether an If-None-Match header value (a list of entity tags, or *) matches the given tag.
+	private static boolean etagMatches(String header, String etag) {
+		if (header == null)
+			return false;
+		for (String tag : header.split(",")) {
+			tag = tag.trim();
+			if (tag.startsWith("W/"))
+				tag = tag.substring(2);
+			if (tag.equals("*") || tag.equals(etag))
+				return true;
+		}
+		return false;
+	}
+	
+	
+	private static void sendError(HttpExchange ex, int code, String msg) throws IOException {
+		byte[] body = (msg + "\n").getBytes(StandardCharsets.UTF_8);
+		ex.getResponseHeaders().remove("ETag");  //Set if the error came after parsing
+		ex.getResponseHeaders().remove("Cache-Control");
+		ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		ex.sendResponseHeaders(code, body.length);
+		try (OutputStream out = ex.getResponseBody()) {
+			out.write(body);
+		}
+	}
+	
+	
+	private static final System.Logger logger = System.getLogger(QrHttpServer.class.getName());
+	
+	
+	//Identifies an encoded symbol.
+	private static final class SymbolKey {
+		final String text;
+		final QrCode.Ecc ecl;
+		
+		SymbolKey(String text, QrCode.Ecc ecl) {
+			this.text = text;
+			this.ecl = ecl;
+		}
+		
+		public boolean equals(Object o) {
+			return o instanceof SymbolKey && ((SymbolKey)o).text.equals(text) && ((SymbolKey)o).ecl == ecl;
+		}
+		
+		public int hashCode() {
+			return text.hashCode() * 31 + ecl.hashCode();
+		}
+	}
+	
+	
+	//Identifies a rendered response.
+	private static final class RenderKey {
+		final SymbolKey symbol;
+		final String format;
+		final int scale;
+		final int border;
+		
+		RenderKey(SymbolKey symbol, String format, int scale, int border) {
+			this.symbol = symbol;
+			this.format = format;
+			this.scale = scale;
+			this.border = border;
+		}
+		
+		String contentType() {
+			return format.equals("png") ? "image/png" : "image/svg+xml";
+		}
+		
+		//Returns the RenderArchive key of the response body.
+		byte[] archiveKey() {
+			return RenderArchive.makeKey(symbol.text, symbol.ecl, format, scale, border);
+		}
+		
+		//Returns a strong entity tag derived from all parameters that affect the response body.
+		String etag() {
+			try {
+				MessageDigest md = MessageDigest.getInstance("SHA-256");
+				md.update(String.format("%s|%s|%d|%d|", symbol.ecl, format, scale, border).getBytes(StandardCharsets.UTF_8));
+				md.update(symbol.text.getBytes(StandardCharsets.UTF_8));
+				byte[] hash = md.digest();
+				StringBuilder sb = new StringBuilder("\"");
+				for (int i = 0; i < 16; i++)
+					sb.append(String.format("%02x", hash[i] & 0xFF));
+				return sb.append('"').toString();
+			} catch (NoSuchAlgorithmException e) {
+				throw new AssertionError(e);
+			}
+		}
+		
+		public boolean equals(Object o) {
+			if (!(o instanceof RenderKey))
+				return false;
+			RenderKey other = (RenderKey)o;
+			return other.symbol.equals(symbol) && other.format.equals(format) && other.scale == scale && other.border == border;
+		}
+		
+		public int hashCode() {
+			return Objects.hash(symbol, format, scale, border);
+		}
+	}
+	
+	
+	//A bounded LRU cache whose misses are coalesced: concurrent callers asking for
+	//the same missing key wait for one computation instead of each running their own.
+	//A key is only computed again after its value was evicted (or its computation failed).
+	private static final class Memo<K,V> {
+		private final int capacity;
+		private final Map<K,V> done;
+		private final ConcurrentHashMap<K,CompletableFuture<V>> pending = new ConcurrentHashMap<>();
+		final LongAdder computations = new LongAdder();
+		
+		Memo(int capacity) {
+			this.capacity = capacity;
+			done = new LinkedHashMap<>(16, 0.75f, true) {
+				protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+					return size() > Memo.this.capacity;
+				}
+			};
+		}
+		
+		V get(K key, Function<K,V> compute) {
+			synchronized (done) {
+				V val = done.get(key);
+				if (val != null)
+					return val;
+			}
+			CompletableFuture<V> mine = new CompletableFuture<>();
+			CompletableFuture<V> existing = pending.putIfAbsent(key, mine);
+			if (existing != null) {
+				try {
+					return existing.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(e);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof RuntimeException)
+						throw (RuntimeException)e.getCause();
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+			try {
+				//A computation that was pending when we looked at done may have finished and been
+				//removed from pending since; its value is in done then (it is added before the removal)
+				V val;
+				synchronized (done) {
+					val = done.get(key);
+				}
+				if (val == null) {
+					computations.increment();
+					val = compute.apply(key);
+					synchronized (done) {
+						if (capacity > 0)
+							done.put(key, val);
+					}
+				}
+				mine.complete(val);
+				return val;
+			} catch (RuntimeException | Error e) {  //Waiters must not block forever
+				mine.completeExceptionally(e);
+				throw e;
+			} finally {
+				pending.remove(key, mine);
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,510 @@
+package Render;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import QRCode.QrCode;
+import QRCode.QrSegment;
+
+//Encodes and renders a stream of payloads as a java.util.concurrent.Flow pipeline with three stages:
+//segmentation, QR Code encoding and rendering to bytes. Each stage processes up to its parallelism number
+//of items at once on the executor, and holds at most parallelism + bufferSize items, so it only requests
+//more from upstream as results are taken downstream: a slow subscriber slows down the whole pipeline
+//instead of filling memory. Results are delivered in the order of the payloads.
+//An item that fails in any stage (e.g. DataTooLongException) skips the remaining stages and is delivered
+//as a Result holding the error (an Error thrown by a stage is wrapped in an ExecutionException); the stream
+//goes on. Only an error of the payload publisher ends the stream with onError, after the items received
+//before it. Cancelling the subscription cancels every stage.
+//Instances of this class are immutable and thread-safe.
+public final class QrPipeline {
+	
+	public enum Step { SEGMENT, ENCODE, RENDER }
+	
+	
+	//Turns a QR Code into output bytes, e.g. an image file. Called concurrently from the render stage.
+	public interface Renderer {
+		byte[] render(QrCode qr) throws IOException;
+	}
+	
+	
+	//Receives the results of the pipeline one at a time, in order. See run().
+	public interface ResultConsumer {
+		void accept(Result result) throws IOException;
+	}
+	
+	
+	//Returns a pipeline that encodes at the specified error correction level (as QrCode.encodeText() does)
+	//and renders with the specified renderer, running its stages on the specified executor. Segmentation
+	//starts with parallelism 1, encoding and rendering with the number of processors, all with buffer size 16.
+	public static QrPipeline create(QrCode.Ecc ecl, Renderer renderer, Executor executor) {
+		Objects.requireNonNull(ecl);
+		Objects.requireNonNull(renderer);
+		Objects.requireNonNull(executor);
+		int cpus = Runtime.getRuntime().availableProcessors();
+		Map<Step,int[]> config = new EnumMap<>(Step.class);
+		config.put(Step.SEGMENT, new int[]{1, 16});
+		config.put(Step.ENCODE , new int[]{cpus, 16});
+		config.put(Step.RENDER , new int[]{cpus, 16});
+		return new QrPipeline(ecl, renderer, executor, config);
+	}
+	
+	
+	//Returns a pipeline like create(ecl, renderer, executor) that runs on the common fork-join pool.
+	public static QrPipeline create(QrCode.Ecc ecl, Renderer renderer) {
+		return create(ecl, renderer, ForkJoinPool.commonPool());
+	}
+	
+	
+	//Returns a renderer that makes black-on-white 1-bit PNG files.
+	public static Renderer png(int scale, int border) {
+		if (scale <= 0 || border < 0)
+			throw new IllegalArgumentException("Value out of range");
+		return qr -> RasterRenderer.toPng(qr, scale, border);
+	}
+	
+	
+	//Fields
+	private final QrCode.Ecc errorCorrectionLevel;
+	private final Renderer renderer;
+	private final Executor executor;
+	private final Map<Step,int[]> config;  //Parallelism and buffer size of each step
+	
+	
+	private QrPipeline(QrCode.Ecc ecl, Renderer renderer, Executor executor, Map<Step,int[]> config) {
+		errorCorrectionLevel = ecl;
+		this.renderer = renderer;
+		this.executor = executor;
+		this.config = config;
+	}
+	
+	
+	//Returns a pipeline like this one, but with the specified parallelism (at least 1) and buffer size
+	//(at least 0) for the specified step.
+	public QrPipeline withStep(Step step, int parallelism, int bufferSize) {
+		Objects.requireNonNull(step);
+		if (parallelism < 1 || bufferSize < 0 || parallelism + bufferSize < 0)
+			throw new IllegalArgumentException("Value out of range");
+		Map<Step,int[]> newConfig = new EnumMap<>(config);
+		newConfig.put(step, new int[]{parallelism, bufferSize});
+		return new QrPipeline(errorCorrectionLevel, renderer, executor, newConfig);
+	}
+	
+	
+	//Returns a publisher of the results for the payloads of the specified publisher. Each subscription
+	//to the returned publisher subscribes to the payload publisher once, with new stages.
+	public Flow.Publisher<Result> process(Flow.Publisher<? extends CharSequence> payloads) {
+		Objects.requireNonNull(payloads);
+		return subscriber -> {
+			Objects.requireNonNull(subscriber);
+			Stage segment = newStage(Step.SEGMENT, text -> QrSegment.makeSegments((CharSequence)text));
+			@SuppressWarnings("unchecked")
+			Stage encode = newStage(Step.ENCODE, segs -> QrCode.encodeSegments((List<QrSegment>)segs, errorCorrectionLevel));
+			Stage render = newStage(Step.RENDER, qr -> renderer.render((QrCode)qr));
+			segment.subscribe(encode);
+			encode.subscribe(render);
+			render.subscribe(new ResultAdapter(subscriber));
+			payloads.subscribe(new PayloadAdapter(segment));
+		};
+	}
+	
+	
+	//Processes the payloads of the specified publisher and passes each result to the consumer, in order and on
+	//one thread at a time. Returns a future for the number of results, which completes exceptionally with the
+	//payload publisher's error or the consumer's exception (which cancels the pipeline). Cancelling the future
+	//cancels the pipeline. A consumer that blocks (e.g. writing to slow storage) applies backpressure.
+	public CompletableFuture<Long> run(Flow.Publisher<? extends CharSequence> payloads, ResultConsumer consumer) {
+		Objects.requireNonNull(consumer);
+		CompletableFuture<Long> result = new CompletableFuture<>();
+		process(payloads).subscribe(new Flow.Subscriber<Result>() {
+			private Flow.Subscription subscription;
+			private long count = 0;
+			
+			public void onSubscribe(Flow.Subscription s) {
+				subscription = s;
+				result.whenComplete((n, e) -> s.cancel());  //No effect after the stream has ended
+				s.request(1);
+			}
+			
+			public void onNext(Result item) {
+				if (result.isDone())
+					return;
+				try {
+					consumer.accept(item);
+				} catch (IOException | RuntimeException e) {
+					result.completeExceptionally(e);
+					return;
+				} catch (Error e) {
+					result.completeExceptionally(e);  //Or the future would never complete
+					throw e;
+				}
+				count++;
+				subscription.request(1);
+			}
+			
+			public void onError(Throwable e) {
+				result.completeExceptionally(e);
+			}
+			
+			public void onComplete() {
+				result.complete(count);
+			}
+		});
+		return result;
+	}
+	
+	
+	private Stage newStage(Step step, Work work) {
+		int[] c = config.get(step);
+		return new Stage(work, c[0], c[1], executor);
+	}
+	
+	
+	
+	//The outcome of one payload.
+	public static final class Result {
+		
+		//The position of the payload in the input stream, starting from 0
+		public final long index;
+		
+		//The payload text
+		public final CharSequence payload;
+		
+		//The rendered bytes, or null if the item failed
+		public final byte[] bytes;
+		
+		//The exception that made the item fail, or null if it succeeded
+		public final Exception error;
+		
+		
+		private Result(Job job) {
+			index = job.index;
+			payload = job.payload;
+			bytes = job.error == null ? (byte[])job.value : null;
+			error = job.error;
+		}
+		
+		
+		public boolean isSuccess() {
+			return error == null;
+		}
+		
+	}
+	
+	
+	//A payload on its way through the stages; value is the output of the last stage.
+	private static final class Job {
+		final long index;
+		final CharSequence payload;
+		Object value;
+		Exception error;  //Once set, the remaining stages leave the job unchanged
+		
+		Job(long index, CharSequence payload) {
+			this.index = index;
+			this.payload = payload;
+			value = payload;
+		}
+	}
+	
+	
+	private interface Work {
+		Object apply(Object value) throws Exception;
+	}
+	
+	
+	//Numbers the payloads and passes them to the first stage.
+	private static final class PayloadAdapter implements Flow.Subscriber<CharSequence> {
+		private final Stage first;
+		private long index = 0;  //Signals are serial, so no synchronization is needed
+		
+		PayloadAdapter(Stage first) {
+			this.first = first;
+		}
+		
+		public void onSubscribe(Flow.Subscription s) { first.onSubscribe(s); }
+		public void onNext(CharSequence item) { first.onNext(new Job(index++, Objects.requireNonNull(item))); }
+		public void onError(Throwable e) { first.onError(e); }
+		public void onComplete() { first.onComplete(); }
+	}
+	
+	
+	//Turns the jobs that come out of the last stage into results.
+	private static final class ResultAdapter implements Flow.Subscriber<Job> {
+		private final Flow.Subscriber<? super Result> downstream;
+		
+		ResultAdapter(Flow.Subscriber<? super Result> downstream) {
+			this.downstream = downstream;
+		}
+		
+		public void onSubscribe(Flow.Subscription s) { downstream.onSubscribe(s); }
+		public void onNext(Job item) { downstream.onNext(new Result(item)); }
+		public void onError(Throwable e) { downstream.onError(e); }
+		public void onComplete() { downstream.onComplete(); }
+	}
+	
+	
+	//Applies the work to each job on the executor, with up to parallelism jobs running at once, and emits the
+	//jobs in the order they arrived. The window holds every job that was received but not yet emitted, and
+	//at most parallelism + bufferSize jobs are received or requested ahead of the downstream demand.
+	//All state is guarded by this object's lock, but signals to other stages are always sent outside of it
+	//and by one thread at a time (the one that wins the draining flag), as Flow requires.
+	private static final class Stage implements Flow.Processor<Job,Job>, Flow.Subscription {
+		private final Work work;
+		private final int parallelism;
+		private final int capacity;
+		private final Executor executor;
+		
+		private Flow.Subscription upstream;  //Null until subscribed
+		private Flow.Subscriber<? super Job> downstream;  //Null until subscribed
+		private final ArrayDeque<Slot> window = new ArrayDeque<>();
+		private final ArrayDeque<Slot> waiting = new ArrayDeque<>();  //Received but not started
+		private int running = 0;
+		private long outstanding = 0;  //Requested from upstream but not received
+		private long demand = 0;  //Requested by downstream but not emitted
+		private boolean upstreamDone = false;
+		private Throwable upstreamError = null;
+		private boolean terminated = false;  //Downstream got onComplete or onError, or cancelled
+		private boolean draining = false;
+		private boolean missed = false;
+		
+		
+		Stage(Work work, int parallelism, int bufferSize, Executor executor) {
+			this.work = work;
+			this.parallelism = parallelism;
+			capacity = parallelism + bufferSize;
+			this.executor = executor;
+		}
+		
+		
+		/*---- Subscriber side ----*/
+		
+		public void onSubscribe(Flow.Subscription s) {
+			Objects.requireNonNull(s);
+			boolean cancel;
+			synchronized (this) {
+				cancel = upstream != null || terminated;
+				if (!cancel)
+					upstream = s;
+			}
+			if (cancel)
+				s.cancel();
+			else
+				drain();
+		}
+		
+		
+		public void onNext(Job item) {
+			Objects.requireNonNull(item);
+			synchronized (this) {
+				if (terminated)
+					return;
+				Slot slot = new Slot(item);
+				window.addLast(slot);
+				waiting.addLast(slot);
+				outstanding--;
+			}
+			drain();
+		}
+		
+		
+		public void onError(Throwable e) {
+			Objects.requireNonNull(e);
+			synchronized (this) {
+				upstreamDone = true;
+				upstreamError = e;
+			}
+			drain();
+		}
+		
+		
+		public void onComplete() {
+			synchronized (this) {
+				upstreamDone = true;
+			}
+			drain();
+		}
+		
+		
+		/*---- Publisher side ----*/
+		
+		public void subscribe(Flow.Subscriber<? super Job> subscriber) {
+			Objects.requireNonNull(subscriber);
+			boolean accepted;
+			synchronized (this) {
+				accepted = downstream == null;
+				if (accepted)
+					downstream = subscriber;
+			}
+			if (accepted)
+				subscriber.onSubscribe(this);
+			else {
+				subscriber.onSubscribe(new Flow.Subscription() {
+					public void request(long n) {}
+					public void cancel() {}
+				});
+				subscriber.onError(new IllegalStateException("Stage already has a subscriber"));
+			}
+		}
+		
+		
+		public void request(long n) {
+			if (n <= 0) {
+				synchronized (this) {
+					if (!upstreamDone) {
+						upstreamDone = true;
+						upstreamError = new IllegalArgumentException("Non-positive request");
+						window.clear();
+						waiting.clear();
+					}
+				}
+			} else {
+				synchronized (this) {
+					demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+				}
+			}
+			drain();
+		}
+		
+		
+		public void cancel() {
+			Flow.Subscription up;
+			synchronized (this) {
+				if (terminated)
+					return;
+				terminated = true;
+				window.clear();
+				waiting.clear();
+				up = upstream;
+			}
+			if (up != null)
+				up.cancel();
+		}
+		
+		
+		/*---- Processing ----*/
+		
+		//Starts waiting jobs, requests from upstream, and emits finished jobs and the terminal signal,
+		//for as long as there is something to do.
+		private void drain() {
+			synchronized (this) {
+				if (draining) {
+					missed = true;
+					return;
+				}
+				draining = true;
+			}
+			while (true) {
+				List<Slot> toStart = new ArrayList<>();
+				Job toEmit = null;
+				long toRequest = 0;
+				boolean complete = false;
+				Throwable error = null;
+				Flow.Subscriber<? super Job> down;
+				synchronized (this) {
+					down = downstream;
+					if (!terminated) {
+						while (running < parallelism && !waiting.isEmpty()) {
+							toStart.add(waiting.removeFirst());
+							running++;
+						}
+						Slot head = window.peekFirst();
+						if (down != null && head != null && head.done && demand > 0) {
+							window.removeFirst();
+							demand--;
+							toEmit = head.job;
+						} else if (down != null && head == null && upstreamDone) {
+							terminated = true;
+							complete = true;
+							error = upstreamError;
+						}
+						long room = capacity - window.size() - outstanding;
+						if (upstream != null && !upstreamDone && room > 0) {
+							outstanding += room;
+							toRequest = room;
+						}
+					}
+					if (toStart.isEmpty() && toEmit == null && toRequest == 0 && !complete) {
+						if (!missed) {
+							draining = false;
+							return;
+						}
+						missed = false;
+						continue;
+					}
+				}
+				for (Slot slot : toStart)
+					start(slot);
+				if (toRequest > 0)
+					upstream.request(toRequest);
+				if (toEmit != null)
+					down.onNext(toEmit);
+				if (complete) {
+					if (error == null)
+						down.onComplete();
+					else {
+						if (upstream != null)
+							upstream.cancel();  //In case the error is ours (bad request); harmless otherwise
+						down.onError(error);
+					}
+				}
+			}
+		}
+		
+		
+		private void start(Slot slot) {
+			Runnable task = () -> {
+				Job job = slot.job;
+				try {
+					if (job.error == null)
+						job.value = work.apply(job.value);
+				} catch (Exception e) {
+					job.value = null;
+					job.error = e;
+				} catch (Error e) {
+					//Fail the item so the stream goes on, and still let the executor see the Error
+					job.value = null;
+					job.error = new ExecutionException(e);
+					throw e;
+				} finally {
+					finish(slot);  //Always, or the window would wait for this slot forever
+				}
+			};
+			try {
+				executor.execute(task);
+			} catch (RuntimeException e) {  //E.g. RejectedExecutionException of a shut down executor
+				slot.job.error = e;
+				finish(slot);
+			}
+		}
+		
+		
+		private void finish(Slot slot) {
+			synchronized (this) {
+				slot.done = true;
+				running--;
+			}
+			drain();
+		}
+		
+	}
+	
+	
+	//A job in a stage's window. Fields are guarded by the stage's lock, except that the job itself
+	//is only touched by the task that runs it between being started and being done.
+	private static final class Slot {
+		final Job job;
+		boolean done = false;
+		
+		Slot(Job job) {
+			this.job = job;
+		}
+	}
+	
+}
@@ -0,0 +1,311 @@
+package Render;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import javax.imageio.ImageIO;
+import QRCode.QrCode;
+
+//Renders QR Codes to raster images with square modules of scale*scale pixels and a light quiet zone of
+//border modules on every side. Each module row is turned into one scaled scanline, which is then copied
+//to the other scale - 1 pixel rows with System.arraycopy(), so the cost is proportional to the number of
+//pixels written. Modules are read from one copy of the packed rows (QrCode.asByteBuffer()) per call and
+//getModule() is never used, because a compact QR Code without a module cache rebuilds its grid on every call.
+//Provides static functions only; not instantiable.
+public final class RasterRenderer {
+	
+	//Returns a 1-bit image (TYPE_BYTE_BINARY with a two-entry IndexColorModel) of the specified QR Code,
+	//with the specified colors in 0xRRGGBB format.
+	public static BufferedImage toImage(QrCode qr, int scale, int border, int lightColor, int darkColor) {
+		int dim = getImageSize(qr, scale, border);
+		BufferedImage result = new BufferedImage(dim, dim, BufferedImage.TYPE_BYTE_BINARY, makeColorModel(lightColor, darkColor));
+		WritableRaster raster = result.getRaster();
+		int stride = ((MultiPixelPackedSampleModel)raster.getSampleModel()).getScanlineStride();
+		renderBits(qr, scale, border, ((DataBufferByte)raster.getDataBuffer()).getData(), 0, stride);
+		return result;
+	}
+	
+	
+	//Returns a black-on-white 1-bit image of the specified QR Code.
+	public static BufferedImage toImage(QrCode qr, int scale, int border) {
+		return toImage(qr, scale, border, 0xFFFFFF, 0x000000);
+	}
+	
+	
+	//Returns the bytes of a black-on-white 1-bit PNG file of the specified QR Code, written by ImageIO.
+	public static byte[] toPng(QrCode qr, int scale, int border) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			ImageIO.write(toImage(qr, scale, border), "png", out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);  //Not thrown by a ByteArrayOutputStream, but possible from a plugin
+		}
+		return out.toByteArray();
+	}
+	
+	
+	//Returns 1-bit images of the specified QR Code at each of the specified scales, in the same order,
+	//produced in a single pass over the module rows (e.g. for a set of responsive image assets).
+	public static BufferedImage[] toImages(QrCode qr, int border, int lightColor, int darkColor, int... scales) {
+		Objects.requireNonNull(scales);
+		IndexColorModel cm = makeColorModel(lightColor, darkColor);
+		BufferedImage[] result = new BufferedImage[scales.length];
+		byte[][] pixels = new byte[scales.length][];
+		int[] strides = new int[scales.length];
+		byte[][] lines = new byte[scales.length][];
+		for (int i = 0; i < scales.length; i++) {
+			int dim = getImageSize(qr, scales[i], border);
+			result[i] = new BufferedImage(dim, dim, BufferedImage.TYPE_BYTE_BINARY, cm);
+			WritableRaster raster = result[i].getRaster();
+			strides[i] = ((MultiPixelPackedSampleModel)raster.getSampleModel()).getScanlineStride();
+			pixels[i] = ((DataBufferByte)raster.getDataBuffer()).getData();
+			lines[i] = new byte[strides[i]];
+		}
+		byte[] modules = packedRows(qr);
+		int rowStride = qr.getRowStride();
+		for (int y = 0; y < qr.size; y++) {
+			for (int i = 0; i < scales.length; i++) {
+				makeBitScanline(modules, y * rowStride, qr.size, scales[i], border, 0, lines[i]);
+				int row = (border + y) * scales[i];
+				for (int j = 0; j < scales[i]; j++)
+					System.arraycopy(lines[i], 0, pixels[i], (row + j) * strides[i], strides[i]);
+			}
+		}
+		return result;  //Quiet zone rows are already 0 (light) in new images
+	}
+	
+	
+	//Draws the specified QR Code as packed 1-bit pixels (1 = dark, most significant bit first) into dst,
+	//starting at offset with stride bytes per pixel row. Every bit of the getImageSize() * getImageSize()
+	//pixel area is written, including the quiet zone and the unused low bits of each row's last byte.
+	public static void renderBits(QrCode qr, int scale, int border, byte[] dst, int offset, int stride) {
+		int dim = getImageSize(qr, scale, border);
+		int lineBytes = (dim + 7) >>> 3;
+		checkBounds(dst.length, offset, stride, lineBytes, dim);
+		byte[] line = new byte[lineBytes];
+		for (int y = 0; y < border * scale; y++) {
+			Arrays.fill(dst, offset + y * stride, offset + y * stride + lineBytes, (byte)0);
+			Arrays.fill(dst, offset + (dim - 1 - y) * stride, offset + (dim - 1 - y) * stride + lineBytes, (byte)0);
+		}
+		byte[] modules = packedRows(qr);
+		int rowStride = qr.getRowStride();
+		for (int y = 0; y < qr.size; y++) {
+			makeBitScanline(modules, y * rowStride, qr.size, scale, border, 0, line);
+			int row = (border + y) * scale;
+			for (int j = 0; j < scale; j++)
+				System.arraycopy(line, 0, dst, offset + (row + j) * stride, lineBytes);
+		}
+	}
+	
+	
+	//Draws the specified QR Code as packed 1-bit pixels (1 = dark) into dst, with its left edge at bit x
+	//(counted from the most significant bit of dst[offset]) and stride bytes per pixel row. Only the bits of the
+	//getImageSize() * getImageSize() pixel area are written; the other bits of the bytes it touches are kept,
+	//so symbols can be placed at any pixel position of a larger 1-bit image.
+	public static void renderBits(QrCode qr, int scale, int border, byte[] dst, int offset, int stride, int x) {
+		if (x < 0)
+			throw new IllegalArgumentException("Negative position");
+		int dim = getImageSize(qr, scale, border);
+		offset += x >>> 3;
+		int shift = x & 7;
+		int lineBytes = (shift + dim + 7) >>> 3;
+		checkBounds(dst.length, offset, stride, lineBytes, dim);
+		byte[] line = new byte[lineBytes];
+		for (int y = 0; y < border * scale; y++) {
+			mergeBits(line, dst, offset + y * stride, shift, dim);
+			mergeBits(line, dst, offset + (dim - 1 - y) * stride, shift, dim);
+		}
+		byte[] modules = packedRows(qr);
+		int rowStride = qr.getRowStride();
+		for (int y = 0; y < qr.size; y++) {
+			makeBitScanline(modules, y * rowStride, qr.size, scale, border, shift, line);
+			int row = (border + y) * scale;
+			for (int j = 0; j < scale; j++)
+				mergeBits(line, dst, offset + (row + j) * stride, shift, dim);
+		}
+	}
+	
+	
+	//Draws the specified QR Code with one byte per pixel (e.g. 8-bit gray or palette indexes) into dst,
+	//starting at offset with stride bytes per pixel row, including the quiet zone.
+	public static void renderBytes(QrCode qr, int scale, int border, byte[] dst, int offset, int stride, byte light, byte dark) {
+		int dim = getImageSize(qr, scale, border);
+		checkBounds(dst.length, offset, stride, dim, dim);
+		byte[] line = new byte[dim];
+		Arrays.fill(line, light);
+		for (int y = 0; y < border * scale; y++) {
+			System.arraycopy(line, 0, dst, offset + y * stride, dim);
+			System.arraycopy(line, 0, dst, offset + (dim - 1 - y) * stride, dim);
+		}
+		byte[] modules = packedRows(qr);
+		int rowStride = qr.getRowStride();
+		for (int y = 0; y < qr.size; y++) {
+			for (int x = 0; x < qr.size; x++)
+				Arrays.fill(line, (border + x) * scale, (border + x + 1) * scale, getBit(modules, y * rowStride, x) ? dark : light);
+			int row = (border + y) * scale;
+			for (int j = 0; j < scale; j++)
+				System.arraycopy(line, 0, dst, offset + (row + j) * stride, dim);
+		}
+	}
+	
+	
+	//Draws the specified QR Code with one int per pixel (e.g. packed RGB or ARGB) into dst,
+	//starting at offset with stride ints per pixel row, including the quiet zone.
+	public static void renderInts(QrCode qr, int scale, int border, int[] dst, int offset, int stride, int light, int dark) {
+		int dim = getImageSize(qr, scale, border);
+		checkBounds(dst.length, offset, stride, dim, dim);
+		int[] line = new int[dim];
+		Arrays.fill(line, light);
+		for (int y = 0; y < border * scale; y++) {
+			System.arraycopy(line, 0, dst, offset + y * stride, dim);
+			System.arraycopy(line, 0, dst, offset + (dim - 1 - y) * stride, dim);
+		}
+		byte[] modules = packedRows(qr);
+		int rowStride = qr.getRowStride();
+		for (int y = 0; y < qr.size; y++) {
+			for (int x = 0; x < qr.size; x++)
+				Arrays.fill(line, (border + x) * scale, (border + x + 1) * scale, getBit(modules, y * rowStride, x) ? dark : light);
+			int row = (border + y) * scale;
+			for (int j = 0; j < scale; j++)
+				System.arraycopy(line, 0, dst, offset + (row + j) * stride, dim);
+		}
+	}
+	
+	
+	//Draws the specified QR Code into the square region of dst whose top left corner is (x, y),
+	//with the specified colors in the ARGB format of BufferedImage.setRGB(). Images backed by an int
+	//array (such as TYPE_INT_RGB and TYPE_INT_ARGB) are written directly; others go through setRGB() one row at a time.
+	public static void renderInto(QrCode qr, int scale, int border, BufferedImage dst, int x, int y, int light, int dark) {
+		Objects.requireNonNull(dst);
+		int dim = getImageSize(qr, scale, border);
+		if (x < 0 || y < 0 || dim > dst.getWidth() - x || dim > dst.getHeight() - y)
+			throw new IndexOutOfBoundsException("Region outside image");
+		WritableRaster raster = dst.getRaster();
+		int type = dst.getType();
+		if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) && raster.getDataBuffer() instanceof DataBufferInt
+				&& raster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+			int stride = ((SinglePixelPackedSampleModel)raster.getSampleModel()).getScanlineStride();
+			int offset = raster.getDataBuffer().getOffset()
+				+ (y - raster.getSampleModelTranslateY()) * stride + (x - raster.getSampleModelTranslateX());
+			renderInts(qr, scale, border, ((DataBufferInt)raster.getDataBuffer()).getData(), offset, stride, light, dark);
+			return;
+		}
+		byte[] modules = packedRows(qr);
+		int rowStride = qr.getRowStride();
+		int[] pixels = new int[dim * scale];  //One scaled module row
+		for (int my = -border; my < qr.size + border; my++) {
+			Arrays.fill(pixels, 0, dim, light);
+			for (int mx = 0; 0 <= my && my < qr.size && mx < qr.size; mx++) {
+				if (getBit(modules, my * rowStride, mx))
+					Arrays.fill(pixels, (border + mx) * scale, (border + mx + 1) * scale, dark);
+			}
+			for (int j = 1; j < scale; j++)
+				System.arraycopy(pixels, 0, pixels, j * dim, dim);
+			dst.setRGB(x, y + (border + my) * scale, dim, scale, pixels, 0, dim);
+		}
+	}
+	
+	
+	//Returns the width and height in pixels of the image of the specified QR Code at the specified scale and border.
+	public static int getImageSize(QrCode qr, int scale, int border) {
+		Objects.requireNonNull(qr);
+		if (scale <= 0 || border < 0)
+			throw new IllegalArgumentException("Value out of range");
+		if (border > Integer.MAX_VALUE / 2 || qr.size + border * 2L > Integer.MAX_VALUE / scale)
+			throw new IllegalArgumentException("Scale or border too large");
+		return (qr.size + border * 2) * scale;
+	}
+	
+	
+	//Returns a copy of the QR Code's packed module rows, as described by QrCode.getRowStride().
+	private static byte[] packedRows(QrCode qr) {
+		ByteBuffer buf = qr.asByteBuffer();
+		byte[] result = new byte[buf.remaining()];
+		buf.get(result);
+		return result;
+	}
+	
+	
+	//Returns the module at column x of the packed module row that starts at modules[rowOffset].
+	private static boolean getBit(byte[] modules, int rowOffset, int x) {
+		return ((modules[rowOffset + (x >>> 3)] >>> (7 - (x & 7))) & 1) != 0;
+	}
+	
+	
+	//Writes the pixel row for one module row, each module widened to scale bits and the whole row
+	//shifted right by shift bits, into line (which is fully overwritten).
+	private static void makeBitScanline(byte[] modules, int rowOffset, int size, int scale, int border, int shift, byte[] line) {
+		Arrays.fill(line, (byte)0);
+		for (int x = 0; x < size; ) {
+			if (!getBit(modules, rowOffset, x)) {
+				x++;
+				continue;
+			}
+			int end = x + 1;  //Set a whole run of dark modules at once
+			while (end < size && getBit(modules, rowOffset, end))
+				end++;
+			setBits(line, shift + (border + x) * scale, shift + (border + end) * scale);
+			x = end;
+		}
+	}
+	
+	
+	//Sets bits from (inclusive) to to (exclusive) in the MSB-first bit array.
+	private static void setBits(byte[] arr, int from, int to) {
+		int first = from >>> 3, last = (to - 1) >>> 3;
+		int headMask = 0xFF >>> (from & 7);
+		int tailMask = 0xFF << (7 - ((to - 1) & 7));
+		if (first == last) {
+			arr[first] |= headMask & tailMask;
+			return;
+		}
+		arr[first] |= headMask;
+		Arrays.fill(arr, first + 1, last, (byte)0xFF);
+		arr[last] |= tailMask;
+	}
+	
+	
+	//Copies the len bits of line that start at bit shift into the same bit positions of dst starting at dst[off].
+	private static void mergeBits(byte[] line, byte[] dst, int off, int shift, int len) {
+		int last = (shift + len - 1) >>> 3;
+		int headMask = 0xFF >>> shift;
+		int tailMask = 0xFF << (7 - ((shift + len - 1) & 7));
+		if (last == 0) {
+			int mask = headMask & tailMask;
+			dst[off] = (byte)((dst[off] & ~mask) | (line[0] & mask));
+			return;
+		}
+		dst[off] = (byte)((dst[off] & ~headMask) | (line[0] & headMask));
+		System.arraycopy(line, 1, dst, off + 1, last - 1);
+		dst[off + last] = (byte)((dst[off + last] & ~tailMask) | (line[last] & tailMask));
+	}
+	
+	
+	private static IndexColorModel makeColorModel(int lightColor, int darkColor) {
+		byte[] r = {(byte)(lightColor >>> 16), (byte)(darkColor >>> 16)};
+		byte[] g = {(byte)(lightColor >>>  8), (byte)(darkColor >>>  8)};
+		byte[] b = {(byte) lightColor        , (byte) darkColor        };
+		return new IndexColorModel(1, 2, r, g, b);
+	}
+	
+	
+	private static void checkBounds(int length, int offset, int stride, int lineLen, int rows) {
+		if (stride < lineLen)
+			throw new IllegalArgumentException("Stride too small");
+		if (offset < 0 || (long)(rows - 1) * stride + lineLen > length - (long)offset)
+			throw new IndexOutOfBoundsException();
+	}
+	
+	
+	private RasterRenderer() {}  // Not instantiable
+	
+}
@@ -0,0 +1,665 @@
+package Render;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//A content-addressed store of rendered files in a directory, so that renders survive restarts and re-runs.
+//Keys are 128-bit hashes of everything that determines the rendered bytes (see makeKey()). Values are appended
+//to segment files (seg-NNNNNNNN.dat) of up to 1 GiB, each entry as its key, its length and its bytes. The index
+//is a memory-mapped open-addressing hash table (linear probing, at most half full) of fixed-size slots holding
+//the key, the segment, offset and length of the value, and the time it was last used. It is never rewritten in
+//place: growing or compacting writes the next generation (index-NNNNNNNN.bin) and deletes the previous one.
+//Lookups touch only the mapped index, and transferTo() sends a value to a channel with FileChannel.transferTo().
+//When the segments grow beyond the size cap, compact() copies the most recently used entries into new
+//segments, up to 3/4 of the cap, and drops the rest. Values are never overwritten: a key always means the
+//same bytes. If the index is missing or damaged, it is rebuilt by scanning the segments.
+//Instances of this class are thread-safe; a directory must not be opened by more than one instance at a time.
+public final class RenderArchive implements Closeable {
+	
+	//Opens or creates the archive in the specified directory, with the specified cap on the total size
+	//of the segment files in bytes (Long.MAX_VALUE for no cap).
+	public static RenderArchive open(Path dir, long maxBytes) throws IOException {
+		Objects.requireNonNull(dir);
+		if (maxBytes <= 0)
+			throw new IllegalArgumentException("Size cap out of range");
+		Files.createDirectories(dir);
+		RenderArchive result = new RenderArchive(dir, maxBytes);
+		result.load();
+		if (result.totalBytes > maxBytes)
+			result.compact();
+		return result;
+	}
+	
+	
+	//Returns the key for a value that is determined by the specified text and parameters, e.g.
+	//makeKey(text, ecl, "png", scale, border). The parameters are compared by their toString() values.
+	public static byte[] makeKey(CharSequence text, Object... params) {
+		Objects.requireNonNull(text);
+		Objects.requireNonNull(params);
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			for (Object p : params) {
+				byte[] b = String.valueOf(p).getBytes(StandardCharsets.UTF_8);
+				md.update(ByteBuffer.allocate(4).putInt(b.length).array());  //Length-prefixed, so no two lists collide
+				md.update(b);
+			}
+			md.update(text.toString().getBytes(StandardCharsets.UTF_8));
+			byte[] result = new byte[KEY_LEN];
+			System.arraycopy(md.digest(), 0, result, 0, KEY_LEN);
+			return result;
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		}
+	}
+	
+	
+	//Fields
+	private final Path dir;
+	private final long maxBytes;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	//Guarded by the write lock, except that readers may update the last-used times of slots (see touch())
+	private FileChannel indexChannel;
+	private MappedByteBuffer index;
+	private int indexGeneration;  //Number of the index file
+	private int capacity;  //Number of slots, a power of 2
+	private int usedSlots;  //Including those of dropped segments, which act as tombstones
+	private int firstSegment;  //Segments before this one were dropped
+	private int lastSegment;  //The segment that is appended to
+	private long totalBytes;  //Sum of the sizes of the segment files
+	private final Map<Integer,FileChannel> segments = new ConcurrentHashMap<>();  //Readers open segments too
+	private boolean closed = false;
+	
+	
+	private RenderArchive(Path dir, long maxBytes) {
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+	}
+	
+	
+	/*---- Lookup ----*/
+	
+	//Tests whether the archive holds a value for the specified key.
+	public boolean contains(byte[] key) {
+		lock.readLock().lock();
+		try {
+			checkOpen();
+			return findSlot(key) >= 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	
+	//Returns a new array with the value for the specified key, or null if there is none.
+	public byte[] get(byte[] key) throws IOException {
+		lock.readLock().lock();
+		try {
+			checkOpen();
+			int slot = findSlot(key);
+			if (slot < 0)
+				return null;
+			touch(slot);
+			int off = slotOffset(slot);
+			ByteBuffer buf = ByteBuffer.allocate(index.getInt(off + 24));
+			FileChannel seg = segment(index.getInt(off + 16));
+			for (long pos = Integer.toUnsignedLong(index.getInt(off + 20)); buf.hasRemaining(); ) {
+				int n = seg.read(buf, pos);
+				if (n < 0)
+					throw new IOException("Segment truncated");
+				pos += n;
+			}
+			return buf.array();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	
+	//Returns the length of the value for the specified key, or -1 if there is none. Like the other lookups,
+	//this counts as a use of the value for compaction.
+	public long length(byte[] key) {
+		lock.readLock().lock();
+		try {
+			checkOpen();
+			int slot = findSlot(key);
+			if (slot < 0)
+				return -1;
+			touch(slot);
+			return index.getInt(slotOffset(slot) + 24);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	
+	//Writes the value for the specified key to the specified channel, without copying it through the Java heap
+	//where the platform allows. Returns the length of the value, or -1 (writing nothing) if there is none.
+	public long transferTo(byte[] key, WritableByteChannel target) throws IOException {
+		Objects.requireNonNull(target);
+		lock.readLock().lock();
+		try {
+			checkOpen();
+			int slot = findSlot(key);
+			if (slot < 0)
+				return -1;
+			touch(slot);
+			int off = slotOffset(slot);
+			int len = index.getInt(off + 24);
+			FileChannel seg = segment(index.getInt(off + 16));
+			long pos = Integer.toUnsignedLong(index.getInt(off + 20));
+			for (long done = 0; done < len; ) {
+				long n = seg.transferTo(pos + done, len - done, target);
+				if (n <= 0 && pos + done >= seg.size())
+					throw new IOException("Segment truncated");
+				done += n;
+			}
+			return len;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	
+	/*---- Modification ----*/
+	
+	//Stores the specified value for the specified key, unless the key is already present (values are
+	//content-addressed, so the existing value is the same). May compact the archive to stay within the cap.
+	public void put(byte[] key, byte[] value) throws IOException {
+		Objects.requireNonNull(value);
+		if (value.length > SEGMENT_LIMIT - ENTRY_HEADER)
+			throw new IllegalArgumentException("Value too large");
+		lock.writeLock().lock();
+		try {
+			checkOpen();
+			int slot = findSlot(key);
+			if (slot >= 0) {
+				touch(slot);
+				return;
+			}
+			
+			//Append the entry to the last segment, starting a new one if it is full
+			FileChannel seg = segment(lastSegment);
+			long pos = seg.size();
+			if (pos + ENTRY_HEADER + value.length > SEGMENT_LIMIT) {
+				lastSegment++;
+				seg = segment(lastSegment);
+				pos = 0;
+				index.putInt(16, lastSegment);
+			}
+			ByteBuffer buf = ByteBuffer.allocate(ENTRY_HEADER + value.length);
+			buf.put(key).putInt(value.length).put(value).flip();
+			for (long p = pos; buf.hasRemaining(); )
+				p += seg.write(buf, p);
+			totalBytes += buf.limit();
+			
+			insert(new Entry(key, lastSegment, (int)pos + ENTRY_HEADER, value.length, now()));
+			if (usedSlots > capacity / 2) {  //Sized for the live entries, so tombstones are dropped without growing
+				List<Entry> live = liveEntries();
+				rebuildIndex(live, tableCapacity(live.size()));
+			}
+			if (totalBytes > maxBytes)
+				compactLocked();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	
+	//Copies the most recently used entries into new segments, up to 3/4 of the size cap, then deletes
+	//the old segments and rebuilds the index without the dropped entries.
+	public void compact() throws IOException {
+		lock.writeLock().lock();
+		try {
+			checkOpen();
+			compactLocked();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	
+	private void compactLocked() throws IOException {
+		//Keep the most recently used entries that fit the budget, then copy them in their current order
+		List<Entry> entries = liveEntries();
+		entries.sort(Comparator.comparingLong((Entry e) -> Integer.toUnsignedLong(e.lastUsed))
+			.thenComparingInt(e -> e.segment).thenComparingInt(e -> e.offset).reversed());  //Newer first on ties
+		long budget = maxBytes - maxBytes / 4;
+		List<Entry> kept = new ArrayList<>();
+		for (Entry e : entries) {
+			if (budget >= ENTRY_HEADER + e.length) {
+				budget -= ENTRY_HEADER + e.length;
+				kept.add(e);
+			}
+		}
+		kept.sort(Comparator.comparingInt((Entry e) -> e.segment).thenComparingInt(e -> e.offset));
+		
+		int oldFirst = firstSegment;
+		int oldLast = lastSegment;
+		int seg = oldLast + 1;
+		FileChannel out = segment(seg);
+		long newTotal = 0;
+		for (Entry e : kept) {
+			int entryLen = ENTRY_HEADER + e.length;
+			if (out.size() + entryLen > SEGMENT_LIMIT) {
+				newTotal += out.size();
+				seg++;
+				out = segment(seg);
+			}
+			long pos = out.size();
+			FileChannel in = segment(e.segment);
+			long src = Integer.toUnsignedLong(e.offset) - ENTRY_HEADER;
+			for (long done = 0; done < entryLen; ) {
+				out.position(pos + done);
+				long n = in.transferTo(src + done, entryLen - done, out);
+				if (n <= 0)
+					throw new IOException("Segment truncated");
+				done += n;
+			}
+			e.segment = seg;
+			e.offset = (int)pos + ENTRY_HEADER;
+		}
+		newTotal += out.size();
+		
+		//Switch the index over to the new segments, then delete the old ones
+		for (int s = seg; s > oldLast; s--)
+			segment(s).force(false);
+		firstSegment = oldLast + 1;
+		lastSegment = seg;
+		rebuildIndex(kept, tableCapacity(kept.size()));
+		for (int s = oldFirst; s <= oldLast; s++)
+			deleteSegment(s);
+		totalBytes = newTotal;
+	}
+	
+	
+	//Forces the segments and the index to storage.
+	public void flush() throws IOException {
+		lock.writeLock().lock();
+		try {
+			checkOpen();
+			for (FileChannel ch : segments.values())
+				ch.force(false);
+			index.force();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	
+	//Returns the number of values in the archive.
+	public int count() {
+		lock.readLock().lock();
+		try {
+			checkOpen();
+			return liveEntries().size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	
+	//Returns the total size of the segment files in bytes.
+	public long sizeBytes() {
+		lock.readLock().lock();
+		try {
+			return totalBytes;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	
+	//Flushes and closes the files. The archive cannot be used afterwards.
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (closed)
+				return;
+			flush();
+			closed = true;
+			for (FileChannel ch : segments.values())
+				ch.close();
+			segments.clear();
+			indexChannel.close();
+			index = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	
+	/*---- Index ----*/
+	
+	//Slot layout: key (16 bytes), segment (int, 0 = empty), offset of the value (int), length (int),
+	//last used time in seconds since the epoch (unsigned int)
+	
+	//Returns the slot holding the specified key in a live segment, or -1 if there is none.
+	private int findSlot(byte[] key) {
+		checkKey(key);
+		long k0 = getLong(key, 0);
+		long k1 = getLong(key, 8);
+		for (int i = (int)k0 & (capacity - 1); ; i = (i + 1) & (capacity - 1)) {
+			int off = slotOffset(i);
+			int seg = index.getInt(off + 16);
+			if (seg == 0)
+				return -1;
+			if (seg >= firstSegment && index.getLong(off) == k0 && index.getLong(off + 8) == k1)
+				return i;
+		}
+	}
+	
+	
+	//Adds an entry whose key is not present, reusing the first slot of a dropped segment on the way if any.
+	private void insert(Entry e) {
+		int i = (int)e.key0 & (capacity - 1);
+		while (true) {
+			int seg = index.getInt(slotOffset(i) + 16);
+			if (seg == 0) {
+				usedSlots++;
+				index.putInt(12, usedSlots);
+				break;
+			}
+			if (seg < firstSegment)
+				break;
+			i = (i + 1) & (capacity - 1);
+		}
+		int off = slotOffset(i);
+		index.putLong(off, e.key0);
+		index.putLong(off + 8, e.key1);
+		index.putInt(off + 20, e.offset);
+		index.putInt(off + 24, e.length);
+		index.putInt(off + 28, e.lastUsed);
+		index.putInt(off + 16, e.segment);  //Last, so that a torn write leaves the slot empty or stale
+	}
+	
+	
+	//Sets the last used time of the slot. Called with only the read lock held, so it races with other
+	//readers doing the same; the opaque access keeps each store of the aligned int whole.
+	private void touch(int slot) {
+		INDEX_INT.setOpaque(index, slotOffset(slot) + 28, now());
+	}
+	
+	
+	private List<Entry> liveEntries() {
+		List<Entry> result = new ArrayList<>();
+		for (int i = 0; i < capacity; i++) {
+			int off = slotOffset(i);
+			int seg = index.getInt(off + 16);
+			if (seg >= firstSegment)
+				result.add(new Entry(index.getLong(off), index.getLong(off + 8), seg, index.getInt(off + 20), index.getInt(off + 24), (int)INDEX_INT.getOpaque(index, off + 28)));
+		}
+		return result;
+	}
+	
+	
+	//Writes the next generation of the index file with the specified entries and capacity, and switches to it.
+	//The current file stays untouched until then, because a mapped file cannot be replaced or deleted on every
+	//platform (Windows refuses both). The new file only becomes valid when its magic number is written, last,
+	//so after a crash load() falls back to the previous generation.
+	private void rebuildIndex(List<Entry> entries, int newCapacity) throws IOException {
+		int gen = indexGeneration + 1;
+		FileChannel ch = FileChannel.open(indexPath(gen), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+			StandardOpenOption.READ, StandardOpenOption.WRITE);
+		MappedByteBuffer newIndex;
+		try {
+			newIndex = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long)newCapacity * SLOT_SIZE);
+		} catch (IOException e) {
+			ch.close();
+			throw e;
+		}
+		FileChannel oldChannel = indexChannel;
+		int oldGen = indexGeneration;
+		indexChannel = ch;
+		index = newIndex;
+		indexGeneration = gen;
+		capacity = newCapacity;
+		usedSlots = 0;
+		index.putInt(4, capacity);
+		index.putInt(8, firstSegment);
+		index.putInt(12, 0);
+		index.putInt(16, lastSegment);
+		for (Entry e : entries)
+			insert(e);
+		index.force();
+		index.putInt(0, MAGIC);
+		index.force();
+		if (oldChannel != null) {
+			oldChannel.close();  //The old mapping stays valid until it is garbage collected
+			deleteIndex(oldGen);
+		}
+	}
+	
+	
+	//Header layout: magic, capacity, first segment, used slots, last segment
+	
+	//Opens the index, or rebuilds it from the segments if it is missing or invalid, and removes
+	//segment files that the index does not cover (left over from an interrupted compaction).
+	private void load() throws IOException {
+		List<Integer> found = new ArrayList<>();
+		try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "seg-*.dat")) {
+			for (Path p : ds) {
+				String name = p.getFileName().toString();
+				try {
+					found.add(Integer.parseInt(name.substring(4, name.length() - 4)));
+				} catch (NumberFormatException e) {}  //Not ours
+			}
+		}
+		found.sort(null);
+		
+		//Use the newest valid index generation, and delete the others (older ones whose deletion
+		//failed while they were mapped, and newer ones that were not completed)
+		List<Integer> generations = new ArrayList<>();
+		try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "index-*.bin")) {
+			for (Path p : ds) {
+				String name = p.getFileName().toString();
+				try {
+					generations.add(Integer.parseInt(name.substring(6, name.length() - 4)));
+				} catch (NumberFormatException e) {}  //Not ours
+			}
+		}
+		generations.sort(Comparator.reverseOrder());
+		for (int gen : generations) {
+			indexGeneration = Math.max(gen, indexGeneration);
+			if (index != null || !openIndex(gen))
+				deleteIndex(gen);
+		}
+		if (index != null) {
+			for (int s : found) {
+				if (s < firstSegment || s > lastSegment)
+					deleteSegment(s);
+			}
+			for (int s = firstSegment; s <= lastSegment; s++)
+				totalBytes += segment(s).size();
+			return;
+		}
+		
+		//Rebuild from the segments, cutting off a partly written last entry. The last use times are lost, so
+		//each entry gets its segment number instead: older segments rank as less recently used, and any entry
+		//used after the restart (which gets the current time) ranks above all of them.
+		firstSegment = found.isEmpty() ? 1 : Math.max(found.get(0), 1);
+		lastSegment = found.isEmpty() ? 1 : found.get(found.size() - 1);
+		List<Entry> entries = new ArrayList<>();
+		Set<String> seen = new HashSet<>();
+		ByteBuffer head = ByteBuffer.allocate(ENTRY_HEADER);
+		for (int s = firstSegment; s <= lastSegment; s++) {
+			FileChannel seg = segment(s);
+			long pos = 0;
+			while (pos + ENTRY_HEADER <= seg.size()) {
+				head.clear();
+				while (head.hasRemaining() && seg.read(head, pos + head.position()) > 0);
+				int len = head.getInt(KEY_LEN);
+				if (len < 0 || pos + ENTRY_HEADER + len > seg.size())
+					break;
+				Entry e = new Entry(head.getLong(0), head.getLong(8), s, (int)pos + ENTRY_HEADER, len, s);
+				if (seen.add(e.key0 + ":" + e.key1))  //Keep the first copy of a key
+					entries.add(e);
+				pos += ENTRY_HEADER + len;
+			}
+			if (pos < seg.size())
+				seg.truncate(pos);
+			totalBytes += pos;
+		}
+		rebuildIndex(entries, tableCapacity(entries.size()));
+	}
+	
+	
+	//Maps the specified index generation and returns true if it is valid, or returns false leaving nothing open.
+	private boolean openIndex(int gen) throws IOException {
+		Path path = indexPath(gen);
+		if (!Files.isRegularFile(path) || Files.size(path) < HEADER_SIZE)
+			return false;
+		FileChannel ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size());
+		int cap = buf.getInt(4);
+		if (!(buf.getInt(0) == MAGIC && cap >= MIN_CAPACITY && Integer.bitCount(cap) == 1
+				&& ch.size() == HEADER_SIZE + (long)cap * SLOT_SIZE && 0 < buf.getInt(8) && buf.getInt(8) <= buf.getInt(16))) {
+			ch.close();
+			return false;
+		}
+		indexChannel = ch;
+		index = buf;
+		capacity = cap;
+		firstSegment = buf.getInt(8);
+		usedSlots = buf.getInt(12);
+		lastSegment = buf.getInt(16);
+		return true;
+	}
+	
+	
+	//Deletes the file of an index generation that is no longer used. This can fail while the file is still
+	//mapped (on Windows, until the mapping is garbage collected); the next load() deletes it then.
+	private void deleteIndex(int gen) {
+		try {
+			Files.deleteIfExists(indexPath(gen));
+		} catch (IOException e) {}
+	}
+	
+	
+	private Path indexPath(int gen) {
+		return dir.resolve(String.format("index-%08d.bin", gen));
+	}
+	
+	
+	/*---- Utilities ----*/
+	
+	private FileChannel segment(int s) throws IOException {
+		FileChannel result = segments.get(s);
+		if (result == null) {
+			FileChannel ch = FileChannel.open(segmentPath(s), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			result = segments.putIfAbsent(s, ch);
+			if (result == null)
+				result = ch;
+			else
+				ch.close();  //Another reader opened it first
+		}
+		return result;
+	}
+	
+	
+	private void deleteSegment(int s) throws IOException {
+		FileChannel ch = segments.remove(s);
+		if (ch != null)
+			ch.close();
+		Files.deleteIfExists(segmentPath(s));
+	}
+	
+	
+	private Path segmentPath(int s) {
+		return dir.resolve(String.format("seg-%08d.dat", s));
+	}
+	
+	
+	private void checkOpen() {
+		if (closed)
+			throw new IllegalStateException("Archive closed");
+	}
+	
+	
+	private static void checkKey(byte[] key) {
+		if (Objects.requireNonNull(key).length != KEY_LEN)
+			throw new IllegalArgumentException("Invalid key length");
+	}
+	
+	
+	private static int slotOffset(int i) {
+		return HEADER_SIZE + i * SLOT_SIZE;
+	}
+	
+	
+	//Returns a power-of-2 capacity for the specified number of entries that keeps the table at most a quarter full.
+	private static int tableCapacity(int entries) {
+		int result = MIN_CAPACITY;
+		while (result / 4 < entries)
+			result *= 2;
+		return result;
+	}
+	
+	
+	private static long getLong(byte[] b, int off) {
+		return ByteBuffer.wrap(b, off, 8).getLong();
+	}
+	
+	
+	private static int now() {
+		return (int)(System.currentTimeMillis() / 1000);
+	}
+	
+	
+	private static final VarHandle INDEX_INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private static final int MAGIC = 0x51524131;  //"QRA1"
+	private static final int KEY_LEN = 16;
+	private static final int ENTRY_HEADER = KEY_LEN + 4;
+	private static final int HEADER_SIZE = 32;
+	private static final int SLOT_SIZE = 32;
+	private static final int MIN_CAPACITY = 1024;
+	private static final int SEGMENT_LIMIT = 1 << 30;  //Offsets fit in a signed int
+	
+	
+	//The contents of a slot.
+	private static final class Entry {
+		final long key0;
+		final long key1;
+		int segment;
+		int offset;
+		final int length;
+		final int lastUsed;
+		
+		Entry(long key0, long key1, int segment, int offset, int length, int lastUsed) {
+			this.key0 = key0;
+			this.key1 = key1;
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.lastUsed = lastUsed;
+		}
+		
+		Entry(byte[] key, int segment, int offset, int length, int lastUsed) {
+			this(getLong(key, 0), getLong(key, 8), segment, offset, length, lastUsed);
+		}
+	}
+	
+}
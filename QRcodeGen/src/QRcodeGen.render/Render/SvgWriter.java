@@ -0,0 +1,62 @@
+package Render;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import QRCode.QrCode;
+
+//Writes QR Codes as SVG documents: a background rectangle in the light color, and one path in the dark color
+//with a rectangle per horizontal run of dark modules. Coordinates are in modules, and the view box includes
+//the quiet zone. The modules are read from the packed rows of QrCode.asByteBuffer(), once per symbol.
+//Provides static functions only; not instantiable.
+public final class SvgWriter {
+	
+	//Returns the SVG document of the specified QR Code with a quiet zone of border modules. The colors are
+	//written as given, so any SVG color works (e.g. "#FFFFFF" or "white").
+	public static String toSvgString(QrCode qr, int border, String lightColor, String darkColor) {
+		Objects.requireNonNull(qr);
+		Objects.requireNonNull(lightColor);
+		Objects.requireNonNull(darkColor);
+		if (border < 0)
+			throw new IllegalArgumentException("Border must be non-negative");
+		long brd = border;
+		StringBuilder sb = new StringBuilder(400 + qr.size * qr.size * 4)  //Enough for the runs of a typical symbol
+			.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+			.append("<!DOCTYPE svg PUBLIC \"-//W3C//DTD SVG 1.1//EN\" \"http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd\">\n")
+			.append("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\" viewBox=\"0 0 ")
+			.append(qr.size + brd * 2).append(' ').append(qr.size + brd * 2).append("\" stroke=\"none\">\n")
+			.append("\t<rect width=\"100%\" height=\"100%\" fill=\"").append(lightColor).append("\"/>\n")
+			.append("\t<path d=\"");
+		ByteBuffer modules = qr.asByteBuffer();
+		int rowStride = qr.getRowStride();
+		boolean first = true;
+		for (int y = 0; y < qr.size; y++) {
+			int rowOffset = y * rowStride;
+			for (int x = 0; x < qr.size; x++) {
+				if (getBit(modules, rowOffset, x)) {
+					int end = x + 1;  //One rectangle per horizontal run of dark modules
+					while (end < qr.size && getBit(modules, rowOffset, end))
+						end++;
+					if (!first)
+						sb.append(' ');
+					first = false;
+					sb.append('M').append(x + brd).append(',').append(y + brd)
+						.append('h').append(end - x).append("v1h-").append(end - x).append('z');
+					x = end;
+				}
+			}
+		}
+		return sb
+			.append("\" fill=\"").append(darkColor).append("\"/>\n")
+			.append("</svg>\n")
+			.toString();
+	}
+	
+	
+	//Returns the module at column x of the packed module row that starts at index rowOffset.
+	private static boolean getBit(ByteBuffer modules, int rowOffset, int x) {
+		return ((modules.get(rowOffset + (x >>> 3)) >>> (7 - (x & 7))) & 1) != 0;
+	}
+	
+	
+	private SvgWriter() {}  // Not instantiable
+	
+}
@@ -0,0 +1,68 @@
+package Render;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+//The header of the little-endian bilevel TIFF files written by BitmapWriter and LabelSheetWriter (WhiteIsZero,
+//so 1 = black). Layout: the file header, the IFD, the strip offsets and strip byte counts (only if there is
+//more than one strip; a single strip is described within the IFD), the resolution value, then the image data.
+//Provides static functions only; not instantiable.
+final class TiffHeader {
+	
+	//Returns a buffer holding the header of an image of width * height pixels with imageBytes bytes of data,
+	//cut into strips of rowsPerStrip rows and stripBytes bytes each (except for a shorter last strip), using
+	//compression 1 (none) or 4 (CCITT Group 4) and the given resolution in dots per inch. The buffer has room
+	//for extraCapacity more bytes after the header, and is positioned at the end of the header.
+	static ByteBuffer allocate(int width, int height, int compression, int rowsPerStrip, long stripBytes,
+			long imageBytes, int dpi, int extraCapacity) {
+		if (compression != 1 && compression != 4)
+			throw new IllegalArgumentException("Unsupported compression");
+		int numStrips = (height + rowsPerStrip - 1) / rowsPerStrip;
+		int numEntries = compression == 4 ? 12 : 11;
+		long offsetsPos = 8 + 2 + numEntries * 12 + 4;
+		long countsPos = offsetsPos + (numStrips > 1 ? numStrips * 4L : 0);
+		long resPos = countsPos + (numStrips > 1 ? numStrips * 4L : 0);
+		long dataPos = resPos + 8;
+		if (dataPos + imageBytes > 0xFFFFFFFFL || dataPos + extraCapacity > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Image too large for TIFF");
+		
+		ByteBuffer buf = ByteBuffer.allocate((int)dataPos + extraCapacity).order(ByteOrder.LITTLE_ENDIAN);
+		buf.put((byte)'I').put((byte)'I').putShort((short)42).putInt(8);
+		buf.putShort((short)numEntries);
+		putEntry(buf, 256, 4, 1, width);         //ImageWidth
+		putEntry(buf, 257, 4, 1, height);        //ImageLength
+		putEntry(buf, 258, 3, 1, 1);             //BitsPerSample
+		putEntry(buf, 259, 3, 1, compression);   //Compression
+		putEntry(buf, 262, 3, 1, 0);             //PhotometricInterpretation: WhiteIsZero
+		putEntry(buf, 273, 4, numStrips, numStrips > 1 ? offsetsPos : dataPos);  //StripOffsets
+		putEntry(buf, 278, 4, 1, rowsPerStrip);  //RowsPerStrip
+		putEntry(buf, 279, 4, numStrips, numStrips > 1 ? countsPos : imageBytes);  //StripByteCounts
+		putEntry(buf, 282, 5, 1, resPos);        //XResolution
+		putEntry(buf, 283, 5, 1, resPos);        //YResolution
+		if (compression == 4)
+			putEntry(buf, 293, 4, 1, 0);         //T6Options: no uncompressed mode
+		putEntry(buf, 296, 3, 1, 2);             //ResolutionUnit: inch
+		buf.putInt(0);  //No next IFD
+		if (numStrips > 1) {
+			for (int i = 0; i < numStrips; i++)
+				buf.putInt((int)(dataPos + i * stripBytes));
+			for (int i = 0; i < numStrips; i++)
+				buf.putInt((int)Math.min(stripBytes, imageBytes - i * stripBytes));
+		}
+		buf.putInt(dpi).putInt(1);
+		assert buf.position() == dataPos;
+		return buf;
+	}
+	
+	
+	private static void putEntry(ByteBuffer buf, int tag, int type, int count, long value) {
+		buf.putShort((short)tag).putShort((short)type).putInt(count);
+		if (type == 3 && count == 1)
+			buf.putShort((short)value).putShort((short)0);
+		else
+			buf.putInt((int)value);
+	}
+	
+	
+	private TiffHeader() {}  // Not instantiable
+	
+}
@@ -0,0 +1,411 @@
+package Render;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import QRCode.QrCode;
+
+//Writes pages of QR Code labels as vector graphics, in PDF (any number of pages) or EPS (a single page).
+//Each symbol is drawn as a path of rectangles: horizontal runs of dark modules, merged with identical runs
+//in the rows below, so a typical symbol needs a fraction of the rectangles of one-per-module output.
+//Every distinct symbol is written once, as a PDF Form XObject or a PostScript procedure, and identical
+//symbols reuse it. The file is streamed page by page (PDF content streams are deflated); besides the
+//output buffer, memory use is the current page and an index of the symbols written so far.
+//All lengths are in points (1/72 inch). Instances of this class are immutable and thread-safe.
+public final class VectorLabelWriter {
+	
+	public enum Format { PDF, EPS }
+	
+	
+	//Returns a writer for pages with the specified number of label columns and rows, module size, quiet zone
+	//in modules, outer margin and spacing between labels. The page size follows from these and the largest symbol.
+	public static VectorLabelWriter create(int columns, int rows, double moduleSize, int border, double margin, double spacing) {
+		if (columns <= 0 || rows <= 0 || !(moduleSize > 0) || border < 0 || !(margin >= 0) || !(spacing >= 0)
+				|| Double.isInfinite(moduleSize) || Double.isInfinite(margin) || Double.isInfinite(spacing))
+			throw new IllegalArgumentException("Value out of range");
+		return new VectorLabelWriter(columns, rows, moduleSize, border, margin, spacing);
+	}
+	
+	
+	//Layout parameters
+	public final int columns;
+	public final int rows;
+	public final double moduleSize;
+	public final int border;
+	public final double margin;
+	public final double spacing;
+	
+	
+	private VectorLabelWriter(int columns, int rows, double moduleSize, int border, double margin, double spacing) {
+		this.columns = columns;
+		this.rows = rows;
+		this.moduleSize = moduleSize;
+		this.border = border;
+		this.margin = margin;
+		this.spacing = spacing;
+	}
+	
+	
+	//Writes the specified QR Codes, filled row by row and page by page, to the specified stream, and leaves
+	//the stream open. Every label cell is as large as the largest symbol; smaller symbols are centered in it.
+	//EPS output holds a single page, so it takes at most columns * rows codes.
+	public void write(List<QrCode> codes, Format format, OutputStream out) throws IOException {
+		Objects.requireNonNull(codes);
+		Objects.requireNonNull(format);
+		Objects.requireNonNull(out);
+		if (codes.isEmpty())
+			throw new IllegalArgumentException("No codes");
+		int perPage = columns * rows;
+		if (format == Format.EPS && codes.size() > perPage)
+			throw new IllegalArgumentException("Too many codes for a single EPS page");
+		
+		int cellModules = 0;
+		for (QrCode qr : codes)
+			cellModules = Math.max(qr.size + border * 2, cellModules);
+		Page page = new Page(cellModules, Math.min(columns, codes.size()), format == Format.EPS ? (codes.size() + columns - 1) / columns : rows);
+		BufferedOutputStream bout = new BufferedOutputStream(out, 1 << 16);
+		if (format == Format.PDF)
+			new PdfOutput(bout, page).write(codes);
+		else
+			new EpsOutput(bout, page).write(codes);
+		bout.flush();
+	}
+	
+	
+	//The geometry shared by all pages.
+	private final class Page {
+		final int cellModules;  //Width and height of a label cell in modules
+		final double width;
+		final double height;
+		
+		Page(int cellModules, int cols, int rws) {
+			this.cellModules = cellModules;
+			double cell = cellModules * moduleSize;
+			width  = margin * 2 + cols * cell + (cols - 1) * spacing;
+			height = margin * 2 + rws  * cell + (rws  - 1) * spacing;
+		}
+		
+		//Returns the x coordinate of the lower left corner of the specified symbol (with its quiet zone) at the specified slot.
+		double symbolX(QrCode qr, int slot) {
+			int col = slot % columns;
+			return margin + col * (cellModules * moduleSize + spacing) + (cellModules - qr.size - border * 2) / 2.0 * moduleSize;
+		}
+		
+		//Returns the y coordinate (upward from the bottom of the page) of the lower left corner of the symbol.
+		double symbolY(QrCode qr, int slot) {
+			int row = slot / columns % rows;
+			double cellTop = height - margin - row * (cellModules * moduleSize + spacing);
+			return cellTop - cellModules * moduleSize + (cellModules - qr.size - border * 2) / 2.0 * moduleSize;
+		}
+	}
+	
+	
+	/*---- PDF ----*/
+	
+	//Objects 1 and 2 are the catalog and the page tree, written last because the page tree lists every page.
+	private final class PdfOutput {
+		private final CountingStream out;
+		private final Page page;
+		private final List<Long> offsets = new ArrayList<>();  //Of objects 1, 2, ...
+		private final List<Integer> pageObjects = new ArrayList<>();
+		private final Map<ByteBuffer,Integer> forms = new HashMap<>();  //Packed modules of each written symbol to its object number
+		private final Deflater deflater = new Deflater();
+		
+		PdfOutput(OutputStream out, Page page) {
+			this.out = new CountingStream(out);
+			this.page = page;
+			offsets.add(-1L);
+			offsets.add(-1L);
+		}
+		
+		
+		void write(List<QrCode> codes) throws IOException {
+			try {
+				print("%PDF-1.4\n");
+				out.write(new byte[] {'%', (byte)0xE2, (byte)0xE3, (byte)0xCF, (byte)0xD3, '\n'});  //Marks the file as binary
+				int perPage = columns * rows;
+				for (int start = 0; start < codes.size(); start += perPage)
+					writePage(codes.subList(start, Math.min(start + perPage, codes.size())));
+				
+				beginObject(1);
+				print("<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+				beginObject(2);
+				StringBuilder sb = new StringBuilder("<< /Type /Pages /Count ").append(pageObjects.size()).append(" /Kids [");
+				for (int obj : pageObjects)
+					sb.append(obj).append(" 0 R ");
+				print(sb.append("] >>\nendobj\n").toString());
+				
+				long xref = out.count;
+				sb = new StringBuilder("xref\n0 ").append(offsets.size() + 1).append("\n0000000000 65535 f \n");
+				for (long off : offsets)
+					sb.append(String.format("%010d 00000 n \n", off));
+				sb.append("trailer\n<< /Size ").append(offsets.size() + 1).append(" /Root 1 0 R >>\nstartxref\n").append(xref).append("\n%%EOF\n");
+				print(sb.toString());
+			} finally {
+				deflater.end();
+			}
+		}
+		
+		
+		private void writePage(List<QrCode> codes) throws IOException {
+			//Write the forms of new symbols, and collect the ones the page uses
+			Set<Integer> used = new TreeSet<>();
+			int[] formOf = new int[codes.size()];
+			for (int i = 0; i < codes.size(); i++) {
+				QrCode qr = codes.get(i);
+				ByteBuffer key = qr.asByteBuffer();
+				Integer obj = forms.get(key);
+				if (obj == null) {
+					obj = writeForm(qr);
+					forms.put(key, obj);
+				}
+				formOf[i] = obj;
+				used.add(obj);
+			}
+			
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < codes.size(); i++) {
+				QrCode qr = codes.get(i);
+				sb.append("q ").append(num(moduleSize)).append(" 0 0 ").append(num(moduleSize)).append(' ')
+					.append(num(page.symbolX(qr, i))).append(' ').append(num(page.symbolY(qr, i)))
+					.append(" cm /S").append(formOf[i]).append(" Do Q\n");
+			}
+			int contents = writeStream("", sb.toString().getBytes(StandardCharsets.US_ASCII));
+			
+			int obj = beginObject(0);
+			sb = new StringBuilder("<< /Type /Page /Parent 2 0 R /MediaBox [0 0 ")
+				.append(num(page.width)).append(' ').append(num(page.height)).append("] /Resources << /XObject <<");
+			for (int form : used)
+				sb.append(" /S").append(form).append(' ').append(form).append(" 0 R");
+			sb.append(" >> >> /Contents ").append(contents).append(" 0 R >>\nendobj\n");
+			print(sb.toString());
+			pageObjects.add(obj);
+		}
+		
+		
+		//Writes the symbol with its quiet zone as a form in module units, and returns its object number.
+		private int writeForm(QrCode qr) throws IOException {
+			int dim = qr.size + border * 2;
+			StringBuilder sb = new StringBuilder();
+			forEachRect(qr, (x, y, w, h) -> sb.append(x).append(' ').append(y).append(' ').append(w).append(' ').append(h).append(" re\n"));
+			sb.append("f\n");
+			return writeStream("/Type /XObject /Subtype /Form /BBox [0 0 " + dim + " " + dim + "] ",
+				sb.toString().getBytes(StandardCharsets.US_ASCII));
+		}
+		
+		
+		//Writes a deflated stream object with the given extra dictionary entries, and returns its object number.
+		private int writeStream(String dict, byte[] data) throws IOException {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4 + 64);
+			deflater.reset();
+			try (DeflaterOutputStream dout = new DeflaterOutputStream(compressed, deflater, 4096)) {
+				dout.write(data);
+			}
+			int obj = beginObject(0);
+			print("<< " + dict + "/Length " + compressed.size() + " /Filter /FlateDecode >>\nstream\n");
+			compressed.writeTo(out);
+			print("\nendstream\nendobj\n");
+			return obj;
+		}
+		
+		
+		//Records the offset of the given object number, or of a new one if 0, writes its header and returns the number.
+		private int beginObject(int obj) throws IOException {
+			if (obj == 0) {
+				offsets.add(out.count);
+				obj = offsets.size();
+			} else
+				offsets.set(obj - 1, out.count);
+			print(obj + " 0 obj\n");
+			return obj;
+		}
+		
+		
+		private void print(String s) throws IOException {
+			out.write(s.getBytes(StandardCharsets.US_ASCII));
+		}
+	}
+	
+	
+	//Counts the bytes written, for the PDF cross-reference table.
+	private static final class CountingStream extends FilterOutputStream {
+		long count = 0;
+		
+		CountingStream(OutputStream out) {
+			super(out);
+		}
+		
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+		
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+	
+	
+	/*---- EPS ----*/
+	
+	//Distinct symbols become procedures /S0, /S1, ... drawn with rectfill in module units. The rectangles
+	//are split into arrays of at most 4000 numbers to stay within common interpreter limits.
+	private final class EpsOutput {
+		private final OutputStream out;
+		private final Page page;
+		
+		EpsOutput(OutputStream out, Page page) {
+			this.out = out;
+			this.page = page;
+		}
+		
+		
+		void write(List<QrCode> codes) throws IOException {
+			StringBuilder sb = new StringBuilder()
+				.append("%!PS-Adobe-3.0 EPSF-3.0\n")
+				.append("%%BoundingBox: 0 0 ").append((long)Math.ceil(page.width)).append(' ').append((long)Math.ceil(page.height)).append('\n')
+				.append("%%HiResBoundingBox: 0 0 ").append(num(page.width)).append(' ').append(num(page.height)).append('\n')
+				.append("%%LanguageLevel: 2\n%%Pages: 1\n%%EndComments\n%%Page: 1 1\n");
+			print(sb);
+			
+			Map<ByteBuffer,Integer> procs = new HashMap<>();
+			int[] procOf = new int[codes.size()];
+			for (int i = 0; i < codes.size(); i++) {
+				QrCode qr = codes.get(i);
+				ByteBuffer key = qr.asByteBuffer();
+				Integer proc = procs.get(key);
+				if (proc == null) {
+					proc = procs.size();
+					procs.put(key, proc);
+					StringBuilder def = new StringBuilder("/S").append(proc).append(" {\n[");
+					int[] numbers = {0};
+					forEachRect(qr, (x, y, w, h) -> {
+						if (numbers[0] == 4000) {
+							def.append("] rectfill\n[");
+							numbers[0] = 0;
+						}
+						def.append(x).append(' ').append(y).append(' ').append(w).append(' ').append(h).append('\n');
+						numbers[0] += 4;
+					});
+					print(def.append("] rectfill\n} bind def\n"));
+				}
+				procOf[i] = proc;
+			}
+			
+			sb = new StringBuilder();
+			for (int i = 0; i < codes.size(); i++) {
+				QrCode qr = codes.get(i);
+				sb.append("gsave ").append(num(page.symbolX(qr, i))).append(' ').append(num(page.symbolY(qr, i))).append(" translate ")
+					.append(num(moduleSize)).append(" dup scale S").append(procOf[i]).append(" grestore\n");
+			}
+			print(sb.append("showpage\n%%EOF\n"));
+		}
+		
+		
+		private void print(CharSequence s) throws IOException {
+			out.write(s.toString().getBytes(StandardCharsets.US_ASCII));
+		}
+	}
+	
+	
+	/*---- Utilities ----*/
+	
+	private interface RectConsumer {
+		void accept(int x, int y, int width, int height);
+	}
+	
+	
+	//Calls the consumer for each rectangle of dark modules, in module units with the origin at the lower left
+	//corner of the quiet zone. Rectangles are horizontal runs, extended downward while the next row has the
+	//very same run.
+	private void forEachRect(QrCode qr, RectConsumer consumer) {
+		int size = qr.size;
+		ByteBuffer modules = qr.asByteBuffer();  //Read once; getModule() may rebuild the grid of a compact QR Code
+		int rowStride = qr.getRowStride();
+		//Runs of the previous row, as start and end x pairs, and the row where each started
+		int[] open = new int[size + 1];
+		int[] openTop = new int[size / 2 + 1];
+		int numOpen = 0;
+		int[] runs = new int[size + 1];
+		int[] next = new int[size + 1];
+		int[] nextTop = new int[size / 2 + 1];
+		for (int y = 0; y <= size; y++) {
+			//Find this row's runs (none past the last row, which closes everything)
+			int numRuns = 0;
+			for (int x = 0; y < size && x < size; x++) {
+				if (getBit(modules, y * rowStride, x)) {
+					int end = x + 1;
+					while (end < size && getBit(modules, y * rowStride, end))
+						end++;
+					runs[numRuns * 2] = x;
+					runs[numRuns * 2 + 1] = end;
+					numRuns++;
+					x = end;
+				}
+			}
+			
+			//Runs are sorted by start, so continue or close the open rectangles with one merge pass
+			int numNext = 0;
+			for (int i = 0, j = 0; i < numOpen || j < numRuns; ) {
+				if (i < numOpen && j < numRuns && open[i * 2] == runs[j * 2] && open[i * 2 + 1] == runs[j * 2 + 1]) {
+					next[numNext * 2] = runs[j * 2];
+					next[numNext * 2 + 1] = runs[j * 2 + 1];
+					nextTop[numNext] = openTop[i];
+					numNext++;
+					i++;
+					j++;
+				} else if (i < numOpen && (j >= numRuns || open[i * 2] <= runs[j * 2])) {
+					int top = openTop[i];
+					consumer.accept(border + open[i * 2], border + size - y, open[i * 2 + 1] - open[i * 2], y - top);
+					i++;
+				} else {
+					next[numNext * 2] = runs[j * 2];
+					next[numNext * 2 + 1] = runs[j * 2 + 1];
+					nextTop[numNext] = y;
+					numNext++;
+					j++;
+				}
+			}
+			int[] temp = open;
+			open = next;
+			next = temp;
+			temp = openTop;
+			openTop = nextTop;
+			nextTop = temp;
+			numOpen = numNext;
+		}
+	}
+	
+	
+	//Returns the module at column x of the packed module row that starts at index rowOffset.
+	private static boolean getBit(ByteBuffer modules, int rowOffset, int x) {
+		return ((modules.get(rowOffset + (x >>> 3)) >>> (7 - (x & 7))) & 1) != 0;
+	}
+	
+	
+	//Formats a length with up to 3 decimals and no trailing zeros.
+	private static String num(double x) {
+		String s = String.format(Locale.ROOT, "%.3f", x);
+		int end = s.length();
+		while (s.charAt(end - 1) == '0')
+			end--;
+		if (s.charAt(end - 1) == '.')
+			end--;
+		return s.substring(0, end);
+	}
+	
+}
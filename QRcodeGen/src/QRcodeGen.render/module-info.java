@@ -0,0 +1,9 @@
+//Image, document and file renderers for QR Codes, and the QrHttpServer rendering service. Requires
+//java.desktop for BufferedImage, the label sheet fonts and ImageIO, and re-exports it since BufferedImage
+//appears in this module's API. Requires jdk.httpserver for QrHttpServer, whose API does not expose it.
+module QRcodeGen.render {
+	requires transitive QRcodeGen.core;
+	requires transitive java.desktop;
+	requires jdk.httpserver;
+	exports Render;
+}
@@ -1,10 +0,0 @@
-/**
- * 
- */
-/**
- * @author navis
- *
- */
-module QRcodeGen {
-	requires java.desktop;
-}
\ No newline at end of file